@@ -0,0 +1,358 @@
+package io.izenecloud.admm;
+
+/**
+ * ADMM update steps shared by the MapReduce iteration and the in-process
+ * engine: the local x-update of one split, the u-update and the consensus
+ * z-update with its residuals.
+ */
+public final class AdmmConsensus {
+	public static final float DEFAULT_ABSOLUTE_TOLERANCE = 1e-4f;
+	public static final float DEFAULT_RELATIVE_TOLERANCE = 1e-3f;
+	public static final float DEFAULT_RELAXATION = 1.0f;
+	private static final double SQUARE_ROOT_POWER = 0.5;
+	public static final float LBFGS_TOLERANCE = 1e-10f;
+	public static final float DEFAULT_INEXACT_TOLERANCE_MIN = 1e-8f;
+	public static final float DEFAULT_INEXACT_TOLERANCE_MAX = 1e-3f;
+
+	private AdmmConsensus() {
+	}
+
+	/**
+	 * x-update: minimizes the local loss of one split plus the augmented
+	 * term rho / 2 * ||x - z + u||^2, starting from xInitial.
+	 */
+	public static double[] minimizeLocal(Lbfgs lbfgs,
+			LogisticL2DiffFunction function, double[] xInitial) {
+		return minimizeLocal(lbfgs, function, xInitial, LBFGS_TOLERANCE, 0);
+	}
+
+	/**
+	 * Inexact x-update, stopping at the given tolerance or after
+	 * maxIterations L-BFGS iterations when that is positive.
+	 */
+	public static double[] minimizeLocal(Lbfgs lbfgs,
+			LogisticL2DiffFunction function, double[] xInitial,
+			double tolerance, int maxIterations) {
+		if (maxIterations > 0) {
+			return lbfgs.minimize(function, tolerance, xInitial, maxIterations);
+		}
+		return lbfgs.minimize(function, tolerance, xInitial);
+	}
+
+	/**
+	 * The minimizer of the local problems as configured by admm.lbfgs.memory
+	 * and admm.lbfgs.line.search.
+	 */
+	public static Lbfgs newLbfgs(org.apache.hadoop.conf.Configuration conf) {
+		Lbfgs lbfgs = new Lbfgs(conf.getInt("admm.lbfgs.memory",
+				Lbfgs.DEFAULT_MEMORY));
+		lbfgs.setLineSearch(Lbfgs.LineSearch.valueOf(conf.get(
+				"admm.lbfgs.line.search", Lbfgs.LineSearch.BACKTRACKING.name())
+				.toUpperCase()));
+		return lbfgs;
+	}
+
+	/**
+	 * Tolerance of the local solves of the next iteration: minimum times
+	 * the factor by which the residuals of the last iteration still exceed
+	 * their tolerances, capped at maximum. The local solves start coarse
+	 * and reach minimum as ADMM reaches its stopping point.
+	 */
+	public static double localTolerance(AdmmIterationStatus previous,
+			double minimum, double maximum) {
+		if (null == previous) {
+			return maximum;
+		}
+		double excess = Math.max(previous.getRNorm() / previous.getEpsPrimal(),
+				previous.getSNorm() / previous.getEpsDual());
+		return Math.max(minimum, Math.min(maximum, minimum * excess));
+	}
+
+	/**
+	 * u-update in place: u += x - z.
+	 */
+	public static void updateU(double[] u, double[] x, double[] z) {
+		for (int i = 0; i < z.length; i++) {
+			u[i] += x[i] - z[i];
+		}
+	}
+
+	/**
+	 * Over-relaxation of the x handed to the z- and u-updates:
+	 * alpha * x + (1 - alpha) * zPrevious. alpha = 1 is plain ADMM, values
+	 * between 1.5 and 1.8 usually speed it up.
+	 */
+	public static double[] relax(double[] x, double[] zPrevious, double alpha) {
+		if (1.0 == alpha) {
+			return x;
+		}
+		double[] xRelaxed = new double[x.length];
+		for (int i = 0; i < x.length; i++) {
+			xRelaxed[i] = alpha * x[i] + (1 - alpha) * zPrevious[i];
+		}
+		return xRelaxed;
+	}
+
+	/**
+	 * Inverse of {@link #relax(double[], double[], double)}, for the average
+	 * of x over splits that were all relaxed towards the same zPrevious. The
+	 * primal residual is defined on the x before relaxation.
+	 */
+	public static double[] unrelax(double[] xRelaxed, double[] zPrevious,
+			double alpha) {
+		if (1.0 == alpha) {
+			return xRelaxed;
+		}
+		double[] x = new double[xRelaxed.length];
+		for (int i = 0; i < x.length; i++) {
+			x[i] = (xRelaxed[i] - (1 - alpha) * zPrevious[i]) / alpha;
+		}
+		return x;
+	}
+
+	/**
+	 * Rescales the scaled dual u in place by rho / rhoNext after rho
+	 * changed, which keeps the unscaled dual rho * u.
+	 */
+	public static void rescaleU(double[] u, double scale) {
+		if (1.0 == scale) {
+			return;
+		}
+		for (int i = 0; i < u.length; i++) {
+			u[i] *= scale;
+		}
+	}
+
+	/**
+	 * z-update from the averages of x and u over count splits. The intercept
+	 * (feature 0) is left out of the l2 shrinkage unless regularizeIntercept
+	 * is set.
+	 */
+	public static double[] updateZ(double[] xAverage, double[] uAverage,
+			double rho, double lambda, long count, boolean regularizeIntercept) {
+		return updateZ(xAverage, uAverage, rho, lambda, 0.0, count,
+				regularizeIntercept);
+	}
+
+	/**
+	 * Elastic-net z-update: minimizes l1 * ||z||_1 + lambda * ||z||^2 +
+	 * rho * count / 2 * ||z - (xAverage + uAverage)||^2, which soft-thresholds
+	 * xAverage + uAverage by l1 / (rho * count) before the l2 shrinkage.
+	 * Coordinates within the threshold come out exactly 0. The intercept is
+	 * neither thresholded nor shrunk unless regularizeIntercept is set.
+	 */
+	public static double[] updateZ(double[] xAverage, double[] uAverage,
+			double rho, double lambda, double l1, long count,
+			boolean regularizeIntercept) {
+		double zMultiplier = rho * count / (rho * count + 2 * lambda);
+		double threshold = l1 / (rho * count);
+		double[] zUpdated = new double[xAverage.length];
+		for (int i = 0; i < zUpdated.length; i++) {
+			if (i == 0 && !regularizeIntercept) {
+				zUpdated[i] = xAverage[i] + uAverage[i];
+			} else {
+				zUpdated[i] = softThreshold(xAverage[i] + uAverage[i],
+						threshold) * zMultiplier;
+			}
+		}
+		return zUpdated;
+	}
+
+	/**
+	 * z-update of the sparse consensus, where coordinate i is averaged over
+	 * the counts[i] splits holding it. Coordinates no split holds are 0.
+	 */
+	public static double[] updateZ(double[] xAverage, double[] uAverage,
+			double rho, double lambda, double[] counts,
+			boolean regularizeIntercept) {
+		return updateZ(xAverage, uAverage, rho, lambda, 0.0, counts,
+				regularizeIntercept);
+	}
+
+	public static double[] updateZ(double[] xAverage, double[] uAverage,
+			double rho, double lambda, double l1, double[] counts,
+			boolean regularizeIntercept) {
+		double[] zUpdated = new double[xAverage.length];
+		for (int i = 0; i < zUpdated.length; i++) {
+			if (0 == counts[i]) {
+				continue;
+			}
+			if (i == 0 && !regularizeIntercept) {
+				zUpdated[i] = xAverage[i] + uAverage[i];
+			} else {
+				zUpdated[i] = softThreshold(xAverage[i] + uAverage[i], l1
+						/ (rho * counts[i]))
+						* rho * counts[i] / (rho * counts[i] + 2 * lambda);
+			}
+		}
+		return zUpdated;
+	}
+
+	/**
+	 * sign(v) * max(|v| - threshold, 0).
+	 */
+	public static double softThreshold(double v, double threshold) {
+		if (v > threshold) {
+			return v - threshold;
+		}
+		if (v < -threshold) {
+			return v + threshold;
+		}
+		return 0.0;
+	}
+
+	/**
+	 * First coordinate of slice number slice when n coordinates are cut into
+	 * numSlices contiguous ranges of nearly equal length.
+	 */
+	public static int sliceStart(int slice, int numSlices, int n) {
+		return (int) ((long) n * slice / numSlices);
+	}
+
+	/**
+	 * Sum over count splits of ||x_i - xAverage||^2, computed from the sum of
+	 * ||x_i||^2 as sum ||x_i||^2 - count * ||xAverage||^2.
+	 */
+	public static double squaredDistanceSum(double xSquaredNorm,
+			double[] xAverage, long count) {
+		double averageSquaredNorm = 0.0;
+		for (int i = 0; i < xAverage.length; i++) {
+			averageSquaredNorm += xAverage[i] * xAverage[i];
+		}
+		// rounding may leave a tiny negative value when all x_i agree
+		return Math.max(0.0, xSquaredNorm - count * averageSquaredNorm);
+	}
+
+	/**
+	 * Sparse consensus variant of
+	 * {@link #squaredDistanceSum(double, double[], long)}, coordinate i
+	 * being held by counts[i] splits.
+	 */
+	public static double squaredDistanceSum(double xSquaredNorm,
+			double[] xAverage, double[] counts) {
+		double averageSquaredNorm = 0.0;
+		for (int i = 0; i < xAverage.length; i++) {
+			averageSquaredNorm += counts[i] * xAverage[i] * xAverage[i];
+		}
+		return Math.max(0.0, xSquaredNorm - averageSquaredNorm);
+	}
+
+	/**
+	 * Primal residual ||r|| = sqrt(sum ||x_i - z||^2) over count splits, from
+	 * the sum of ||x_i||^2 and the average of x, as sum ||x_i - xAverage||^2
+	 * + count * ||xAverage - z||^2.
+	 */
+	public static double rNorm(double xSquaredNorm, double[] xAverage,
+			double[] z, long count) {
+		double result = squaredDistanceSum(xSquaredNorm, xAverage, count);
+		for (int i = 0; i < xAverage.length; i++) {
+			result += count * Math.pow(xAverage[i] - z[i], 2);
+		}
+		return Math.pow(result, SQUARE_ROOT_POWER);
+	}
+
+	public static double rNorm(double xSquaredNorm, double[] xAverage,
+			double[] z, double[] counts) {
+		double result = squaredDistanceSum(xSquaredNorm, xAverage, counts);
+		for (int i = 0; i < xAverage.length; i++) {
+			result += counts[i] * Math.pow(xAverage[i] - z[i], 2);
+		}
+		return Math.pow(result, SQUARE_ROOT_POWER);
+	}
+
+	/**
+	 * Dual residual ||s|| = rho * sqrt(count) * ||z - zPrevious||.
+	 */
+	public static double sNorm(double[] z, double[] zPrevious, double rho,
+			long count) {
+		double result = 0.0;
+		for (int i = 0; i < z.length; i++) {
+			result += Math.pow(z[i] - zPrevious[i], 2);
+		}
+		result *= Math.pow(rho, 2);
+		result *= count;
+		return Math.pow(result, SQUARE_ROOT_POWER);
+	}
+
+	public static double sNorm(double[] z, double[] zPrevious, double rho,
+			double[] counts) {
+		double result = 0.0;
+		for (int i = 0; i < z.length; i++) {
+			result += counts[i] * Math.pow(z[i] - zPrevious[i], 2);
+		}
+		result *= Math.pow(rho, 2);
+		return Math.pow(result, SQUARE_ROOT_POWER);
+	}
+
+	/**
+	 * count * ||v||^2, the squared norm of v repeated once per split.
+	 */
+	public static double squaredNorm(double[] v, long count) {
+		double result = 0.0;
+		for (int i = 0; i < v.length; i++) {
+			result += v[i] * v[i];
+		}
+		return count * result;
+	}
+
+	public static double squaredNorm(double[] v, double[] counts) {
+		double result = 0.0;
+		for (int i = 0; i < v.length; i++) {
+			result += counts[i] * v[i] * v[i];
+		}
+		return result;
+	}
+
+	/**
+	 * Primal tolerance sqrt(p) * absolute + relative * max(||x||, ||z||),
+	 * p being the number of local coordinates over all splits.
+	 */
+	public static double epsPrimal(double p, double xSquaredNorm,
+			double zSquaredNorm, double absolute, double relative) {
+		return Math.pow(p, SQUARE_ROOT_POWER)
+				* absolute
+				+ relative
+				* Math.pow(Math.max(xSquaredNorm, zSquaredNorm),
+						SQUARE_ROOT_POWER);
+	}
+
+	/**
+	 * Dual tolerance sqrt(p) * absolute + relative * rho * ||u||, u being the
+	 * scaled dual variable.
+	 */
+	public static double epsDual(double p, double uSquaredNorm, double rho,
+			double absolute, double relative) {
+		return Math.pow(p, SQUARE_ROOT_POWER) * absolute + relative * rho
+				* Math.pow(uSquaredNorm, SQUARE_ROOT_POWER);
+	}
+
+	public static boolean converged(double rNorm, double sNorm,
+			double epsPrimal, double epsDual) {
+		return rNorm <= epsPrimal && sNorm <= epsDual;
+	}
+
+	/**
+	 * Objective of the consensus problem: the local losses plus the l2 term
+	 * lambda * ||z||^2, leaving out the intercept unless regularizeIntercept
+	 * is set.
+	 */
+	public static double objective(double loss, double[] z, double lambda,
+			boolean regularizeIntercept) {
+		return objective(loss, z, lambda, 0.0, regularizeIntercept);
+	}
+
+	/**
+	 * Elastic-net objective: the local losses plus lambda * ||z||^2 + l1 *
+	 * ||z||_1.
+	 */
+	public static double objective(double loss, double[] z, double lambda,
+			double l1, boolean regularizeIntercept) {
+		double squares = 0.0;
+		double absolutes = 0.0;
+		for (int i = regularizeIntercept ? 0 : 1; i < z.length; i++) {
+			squares += z[i] * z[i];
+			absolutes += Math.abs(z[i]);
+		}
+		return loss + lambda * squares + l1 * absolutes;
+	}
+}
@@ -2,55 +2,69 @@ package io.izenecloud.admm;
 
 import java.io.IOException;
 
-import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Partial sums of the x and u slices emitted by the mappers of one node, so
+ * that only one record per slice is shuffled from there.
+ */
 public class AdmmIterationCombiner
 		extends
-		Reducer<NullWritable, AdmmReducerContextWritable, NullWritable, AdmmReducerContextWritable> {
+		Reducer<IntWritable, AdmmReducerContextWritable, IntWritable, AdmmReducerContextWritable> {
 	private static final Logger LOG = LoggerFactory
 			.getLogger(AdmmIterationCombiner.class);
-	private double[] zUpdated;
-	private long count;
-	private double rho;
-	private double lambda;
 
-	@Override
-	protected void setup(Context context) throws IOException,
-			InterruptedException {
-		zUpdated = null;
-		count = 0;
-	}
-
-	protected void reduce(NullWritable key,
+	protected void reduce(IntWritable key,
 			Iterable<AdmmReducerContextWritable> values, Context context)
 			throws IOException, InterruptedException {
+		AdmmReducerContext sum = sum(values);
+		LOG.info("Combine {} => 1 for slice {}", sum.getCount(), key.get());
+		context.write(key, new AdmmReducerContextWritable(sum));
+	}
 
+	/**
+	 * Adds up x, u, the primal objective, the counts and the squared x norms
+	 * of the given partial contexts; rho and lambda are taken from the first one.
+	 */
+	static AdmmReducerContext sum(Iterable<AdmmReducerContextWritable> values) {
+		double[] xUpdated = null;
+		double[] uInitial = null;
+		double primalObjectiveValue = 0.0;
+		double rho = 0.0;
+		double lambda = 0.0;
+		long count = 0;
+		double xSquaredNorm = 0.0;
+		double[] counts = null;
 		for (AdmmReducerContextWritable reducerContextWritable : values) {
 			AdmmReducerContext reducerContext = reducerContextWritable.get();
-			if (null == this.zUpdated) {
-				this.zUpdated = reducerContext.getZUpdated();
-				this.rho = reducerContext.getRho();
-				this.lambda = reducerContext.getLambdaValue();
-				this.count = reducerContext.getCount();
+			if (null == xUpdated) {
+				xUpdated = reducerContext.getXUpdated();
+				uInitial = reducerContext.getUInitial();
+				rho = reducerContext.getRho();
+				lambda = reducerContext.getLambdaValue();
+				counts = reducerContext.getCounts();
 			} else {
-				double[] zUpdated = reducerContext.getZUpdated();
-				for (int i = 0; i < zUpdated.length; i++) {
-					this.zUpdated[i] += zUpdated[i];
+				double[] x = reducerContext.getXUpdated();
+				for (int i = 0; i < x.length; i++) {
+					xUpdated[i] += x[i];
+				}
+				double[] u = reducerContext.getUInitial();
+				for (int i = 0; i < u.length; i++) {
+					uInitial[i] += u[i];
+				}
+				double[] c = reducerContext.getCounts();
+				for (int i = 0; null != c && i < c.length; i++) {
+					counts[i] += c[i];
 				}
-				this.count += reducerContext.getCount();
 			}
+			primalObjectiveValue += reducerContext.getPrimalObjectiveValue();
+			count += reducerContext.getCount();
+			xSquaredNorm += reducerContext.getXSquaredNorm();
 		}
+		return new AdmmReducerContext(null, uInitial, xUpdated, null,
+				primalObjectiveValue, rho, lambda, count, xSquaredNorm, counts);
 	}
-
-	protected void cleanup(Context context) throws IOException,
-			InterruptedException {
-		AdmmReducerContext reducerContext = new AdmmReducerContext(null, null,
-				null, zUpdated, 0.0, rho, lambda, count);
-		LOG.info("Combine {} => 1", count);
-		context.write(NullWritable.get(), new AdmmReducerContextWritable(
-				reducerContext));
-	}
-}
\ No newline at end of file
+}
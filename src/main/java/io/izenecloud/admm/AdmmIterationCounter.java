@@ -0,0 +1,20 @@
+package io.izenecloud.admm;
+
+/**
+ * Job counters of an ADMM iteration. Every reducer adds the share of its
+ * slice, so the job totals are the squared residuals and the objective of
+ * the whole consensus, in millionths.
+ */
+public enum AdmmIterationCounter {
+	PRIMAL_RESIDUAL_SQUARED, DUAL_RESIDUAL_SQUARED, OBJECTIVE;
+
+	private static final double SCALE = 1e6;
+
+	public static long toCounter(double value) {
+		return Math.round(value * SCALE);
+	}
+
+	public static double fromCounter(long value) {
+		return value / SCALE;
+	}
+}
@@ -2,6 +2,7 @@ package io.izenecloud.admm;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
@@ -15,6 +16,7 @@ import org.codehaus.jackson.map.ObjectMapper;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
@@ -33,10 +35,23 @@ public final class AdmmIterationHelper {
 	private AdmmIterationHelper() {
 	}
 
-	@SuppressWarnings("deprecation")
 	public static AdmmMapperContext readPreviousAdmmMapperContext(
 			String splitId, Path previousIntermediateOutputLocationPath,
 			FileSystem fs, Configuration conf) throws IOException {
+		return readPreviousAdmmMapperContext(splitId,
+				previousIntermediateOutputLocationPath, fs, conf, null);
+	}
+
+	/**
+	 * Reads the state of a split from the previous iteration. With
+	 * activeColumns set, U- and X- hold only those coordinates and z is
+	 * gathered down to them.
+	 */
+	@SuppressWarnings("deprecation")
+	public static AdmmMapperContext readPreviousAdmmMapperContext(
+			String splitId, Path previousIntermediateOutputLocationPath,
+			FileSystem fs, Configuration conf, int[] activeColumns)
+			throws IOException {
 		Path previousUPath = new Path(previousIntermediateOutputLocationPath,
 				"U-" + splitId);
 		SequenceFile.Reader reader = new SequenceFile.Reader(fs, previousUPath,
@@ -65,9 +80,14 @@ public final class AdmmIterationHelper {
 
 		AdmmReducerContext reduceContext = reduceContextWritable.get();
 		double[] zUpdated = reduceContext.getZUpdated();
-		for (int i = 0; i < zUpdated.length; i++) {
-			uInitial[i] += xUpdated[i] - zUpdated[i]; // uUpdated
+		if (null != activeColumns) {
+			double[] zActive = new double[activeColumns.length];
+			for (int j = 0; j < activeColumns.length; j++) {
+				zActive[j] = zUpdated[activeColumns[j]];
+			}
+			zUpdated = zActive;
 		}
+		AdmmConsensus.updateU(uInitial, xUpdated, zUpdated);
 
 		AdmmMapperContext mapperContext = new AdmmMapperContext(null, null,
 				uInitial, xUpdated, zUpdated, reduceContext.getRho(),
@@ -120,23 +140,6 @@ public final class AdmmIterationHelper {
 		return result;
 	}
 
-	public static double calculateR(Path output, FileSystem fs,
-			Configuration conf, double[] xUpdatedAverage) throws IOException {
-		double result = 0.0;
-		Writable key = NullWritable.get();
-		DoubleArrayWritable val = new DoubleArrayWritable();
-		for (Path file : getFilePaths(output, "X-*", fs)) {
-			SequenceFile.Reader reader = new SequenceFile.Reader(fs, file, conf);
-			reader.next(key, val);
-			double[] thisXUpdated = val.get();
-			for (int j = 0; j < xUpdatedAverage.length; j++) {
-				result += Math.pow(thisXUpdated[j] - xUpdatedAverage[j], 2);
-			}
-			reader.close();
-		}
-		return result;
-	}
-
 	public static AdmmReducerContext readPreviousAdmmReducerContext(
 			Path previousIntermediateOutputLocationPath, FileSystem fs,
 			Configuration conf) throws IOException {
@@ -152,6 +155,72 @@ public final class AdmmIterationHelper {
 		return reduceContextWritable.get();
 	}
 
+	/**
+	 * Reads the single record of a Z file, as written by the driver and
+	 * kept as FINAL_MODEL.
+	 */
+	@SuppressWarnings("deprecation")
+	public static AdmmReducerContext readAdmmReducerContext(Path path,
+			FileSystem fs, Configuration conf) throws IOException {
+		SequenceFile.Reader reader = new SequenceFile.Reader(fs, path, conf);
+		AdmmReducerContextWritable reduceContextWritable = new AdmmReducerContextWritable();
+		try {
+			reader.next(NullWritable.get(), reduceContextWritable);
+		} finally {
+			reader.close();
+		}
+		return reduceContextWritable.get();
+	}
+
+	public static void writeAdmmReducerContext(AdmmReducerContext context,
+			Path path, FileSystem fs, Configuration conf) throws IOException {
+		SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf, path,
+				NullWritable.class, AdmmReducerContextWritable.class);
+		try {
+			writer.append(NullWritable.get(), new AdmmReducerContextWritable(
+					context));
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * The z the current iteration starts from: the Z of the previous
+	 * iteration, or the warm start model in iteration 0. Returns null when
+	 * the iteration starts from zero.
+	 */
+	public static double[] readPreviousZ(Configuration conf) throws IOException {
+		Path path;
+		if (conf.getInt("iteration.number", 0) > 0) {
+			path = new Path(conf.get("previous.intermediate.output.location"),
+					"Z");
+		} else if (null != conf.get("admm.warm.start.location")) {
+			path = new Path(conf.get("admm.warm.start.location"));
+		} else {
+			return null;
+		}
+		return readAdmmReducerContext(path, path.getFileSystem(conf), conf)
+				.getZUpdated();
+	}
+
+	/**
+	 * Rewrites the history file with one tab separated line per iteration.
+	 */
+	public static void writeHistory(List<AdmmIterationStatus> history,
+			Path path, FileSystem fs) throws IOException {
+		FSDataOutputStream out = fs.create(path, true);
+		try {
+			StringBuilder sb = new StringBuilder(AdmmIterationStatus.HEADER)
+					.append('\n');
+			for (AdmmIterationStatus status : history) {
+				sb.append(status).append('\n');
+			}
+			out.write(sb.toString().getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
 	public static String admmMapperContextToJson(AdmmMapperContext context)
 			throws IOException {
 		return OBJECT_MAPPER.writeValueAsString(context);
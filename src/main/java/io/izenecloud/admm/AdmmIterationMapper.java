@@ -1,49 +1,57 @@
 package io.izenecloud.admm;
 
-import edu.stanford.nlp.optimization.DiffFunction;
-import edu.stanford.nlp.optimization.QNMinimizer;
-
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
-import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.VectorWritable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static io.izenecloud.admm.AdmmIterationHelper.*;
 
 public class AdmmIterationMapper
 		extends
-		Mapper<Text, VectorWritable, NullWritable, AdmmReducerContextWritable> {
+		Mapper<Text, VectorWritable, IntWritable, AdmmReducerContextWritable> {
 
 	public static final Logger LOG = LoggerFactory
 			.getLogger(AdmmIterationMapper.class.getName());
 	private static final float DEFAULT_REGULARIZATION_FACTOR = 0.000001f;
 	private static final float DEFAULT_RHO = 0.1f;
+	private static final int DEFAULT_NUM_THREADS = 1;
 
 	private int iteration;
 	private FileSystem fs;
 
-	private QNMinimizer lbfgs;
+	private Lbfgs lbfgs;
+	private int numThreads;
+	private boolean singlePrecision;
+	private boolean sparseConsensus;
+	private String warmStartLocation;
+	private ExecutorService executor;
 	private boolean addIntercept;
 	private float regularizationFactor;
 	private double rho;
+	private double relaxation;
+	private double uScale;
+	private double lbfgsTolerance;
+	private int lbfgsMaxIterations;
 	private String previousIntermediateOutputLocation;
 	private Path previousIntermediateOutputLocationPath;
 	private String splitId;
-	private List<Vector> inputSplitData;
+	private Path splitCachePath;
+	private CompressedRowMatrix cachedSplitData;
+	private CompressedRowMatrix.Builder inputSplitData;
 
 	private Configuration conf;
 
@@ -53,6 +61,12 @@ public class AdmmIterationMapper
 		iteration = Integer.parseInt(conf.get("iteration.number"));
 		addIntercept = conf.getBoolean("add.intercept", false);
 		rho = conf.getFloat("rho", DEFAULT_RHO);
+		relaxation = conf.getFloat("admm.relaxation",
+				AdmmConsensus.DEFAULT_RELAXATION);
+		uScale = conf.getFloat("admm.u.scale", 1.0f);
+		lbfgsTolerance = conf.getFloat("admm.lbfgs.tolerance",
+				AdmmConsensus.LBFGS_TOLERANCE);
+		lbfgsMaxIterations = conf.getInt("admm.lbfgs.max.iterations", 0);
 		regularizationFactor = conf.getFloat("regularization.factor",
 				DEFAULT_REGULARIZATION_FACTOR);
 		previousIntermediateOutputLocation = conf
@@ -66,14 +80,54 @@ public class AdmmIterationMapper
 			LOG.info(e.toString());
 		}
 
-		lbfgs = new QNMinimizer();
+		lbfgs = AdmmConsensus.newLbfgs(conf);
+		singlePrecision = conf.getBoolean("admm.iteration.single.precision",
+				false);
+		sparseConsensus = conf.getBoolean("admm.iteration.sparse.consensus",
+				false);
+		warmStartLocation = conf.get("admm.warm.start.location");
+		numThreads = conf.getInt("admm.iteration.num.threads",
+				DEFAULT_NUM_THREADS);
+		if (numThreads > 1) {
+			executor = Executors.newFixedThreadPool(numThreads);
+		}
 
 		FileSplit split = (FileSplit) context.getInputSplit();
 		splitId = split.getPath() + ":" + Long.toString(split.getStart())
 				+ " - " + Long.toString(split.getLength());
 		splitId = removeIpFromHdfsFileName(splitId);
 
-		inputSplitData = new LinkedList<Vector>();
+		String splitCacheLocation = conf.get("admm.split.cache.location");
+		if (null != splitCacheLocation) {
+			splitCachePath = SplitCache.getPath(new Path(splitCacheLocation),
+					splitId);
+			if (iteration > 0) {
+				cachedSplitData = SplitCache.read(splitCachePath,
+						splitCachePath.getFileSystem(conf));
+			}
+		}
+		if (null == cachedSplitData) {
+			inputSplitData = new CompressedRowMatrix.Builder(addIntercept);
+		} else {
+			LOG.info("Read input split {} from cache {}", splitId,
+					splitCachePath);
+		}
+	}
+
+	public void run(Context context) throws IOException, InterruptedException {
+		setup(context);
+		try {
+			// the packed split of a previous iteration makes the records
+			// of this one redundant
+			if (null == cachedSplitData) {
+				while (context.nextKeyValue()) {
+					map(context.getCurrentKey(), context.getCurrentValue(),
+							context);
+				}
+			}
+		} finally {
+			cleanup(context);
+		}
 	}
 
 	protected void map(Text key, VectorWritable value, Context context)
@@ -82,65 +136,94 @@ public class AdmmIterationMapper
 		if (key.toString().contains("|clustering")) {
 			return;
 		}
-		Vector v = value.get();
-		if (addIntercept) {
-			v.set(0, 1.0);
-		}
-		inputSplitData.add(v);
+		inputSplitData.append(value.get());
 	}
 
-	@SuppressWarnings("unchecked")
 	protected void cleanup(Context context) throws IOException,
 			InterruptedException {
-		if (inputSplitData.size() <= 0) {
-			return;
+		try {
+			optimizeAndWrite(context);
+		} finally {
+			if (null != executor) {
+				executor.shutdownNow();
+			}
 		}
-		LOG.info("Input Split Size : row = {}, col = {}",
-				inputSplitData.size(), inputSplitData.get(0).size());
-		Vector[] vecArray = new Vector[inputSplitData.size()];
-
-		Iterator<Vector> iterator = inputSplitData.iterator();
-		int row = 0;
-		while (iterator.hasNext()) {
-			vecArray[row] = iterator.next();
-			row++;
+	}
+
+	private void optimizeAndWrite(Context context) throws IOException,
+			InterruptedException {
+		CompressedRowMatrix a = cachedSplitData;
+		if (null == a) {
+			if (inputSplitData.numRows() <= 0) {
+				return;
+			}
+			a = inputSplitData.build();
+			inputSplitData = null;
+			if (null != splitCachePath) {
+				SplitCache.write(a, splitCachePath,
+						splitCachePath.getFileSystem(conf));
+			}
+		}
+		cachedSplitData = null;
+		LOG.info("Input Split Size : row = {}, col = {}, nnz = {}",
+				new Object[] { a.numRows(), a.numCols(), a.numNonZeroes() });
+
+		// in sparse consensus mode x, u and z are kept for the columns of
+		// this split only
+		int numCols = a.numCols();
+		int[] activeColumns = null;
+		if (sparseConsensus) {
+			activeColumns = a.activeColumns();
+			a = a.compact(activeColumns);
+			LOG.info("Sparse consensus on {} of {} columns",
+					activeColumns.length, numCols);
 		}
 
 		AdmmMapperContext mapperContext;
-		if (iteration == 0) {
-			mapperContext = new AdmmMapperContext(splitId, vecArray, rho);
+		if (iteration == 0 && null != warmStartLocation) {
+			mapperContext = assembleMapperContextFromWarmStart(a,
+					activeColumns, numCols);
+		} else if (iteration == 0) {
+			mapperContext = new AdmmMapperContext(splitId, a, rho);
 		} else {
-			mapperContext = assembleMapperContextFromCache(vecArray, splitId);
+			mapperContext = assembleMapperContextFromCache(a, splitId,
+					activeColumns);
 		}
 		AdmmReducerContext reducerContext = localMapperOptimization(mapperContext);
+		// the consensus and the next u-update see the relaxed x, the
+		// primal residual the x itself
+		double[] x = reducerContext.getXUpdated();
+		reducerContext = new AdmmReducerContext(splitId,
+				reducerContext.getUInitial(), AdmmConsensus.relax(x,
+						mapperContext.getZInitial(), relaxation), null,
+				reducerContext.getPrimalObjectiveValue(),
+				reducerContext.getRho(), reducerContext.getLambdaValue(),
+				reducerContext.getCount());
 
 		LOG.info("Iteration " + iteration + "Mapper outputting splitId "
 				+ splitId);
 
-		context.write(NullWritable.get(), new AdmmReducerContextWritable(
-				reducerContext));
+		writeSlices(reducerContext, x, activeColumns, numCols, context);
 
 		Configuration conf = context.getConfiguration();
 
+		// X- and U- are keyed by NullWritable, the job output by the slice
+		AdmmIterationOutputFormat<NullWritable, DoubleArrayWritable> format =
+				new AdmmIterationOutputFormat<NullWritable, DoubleArrayWritable>();
 		RecordWriter<NullWritable, DoubleArrayWritable> writer = null;
 		try {
-			conf.setClass("com.b5m.admm.iteration.output.class",
-					DoubleArrayWritable.class, Writable.class);
 			conf.set("com.b5m.admm.iteration.output.name", "X-" + this.splitId);
-
-			writer = (RecordWriter<NullWritable, DoubleArrayWritable>) context
-					.getOutputFormatClass().newInstance()
-					.getRecordWriter(context);
+			writer = format.getRecordWriter(context, NullWritable.class,
+					DoubleArrayWritable.class);
 			writer.write(NullWritable.get(), new DoubleArrayWritable(
-					reducerContext.getXUpdated()));
+					reducerContext.getXUpdated(), singlePrecision));
 			writer.close(context);
 
 			conf.set("com.b5m.admm.iteration.output.name", "U-" + this.splitId);
-			writer = (RecordWriter<NullWritable, DoubleArrayWritable>) context
-					.getOutputFormatClass().newInstance()
-					.getRecordWriter(context);
+			writer = format.getRecordWriter(context, NullWritable.class,
+					DoubleArrayWritable.class);
 			writer.write(NullWritable.get(), new DoubleArrayWritable(
-					reducerContext.getUInitial()));
+					reducerContext.getUInitial(), singlePrecision));
 			writer.close(context);
 
 		} catch (Exception e) {
@@ -149,15 +232,66 @@ public class AdmmIterationMapper
 		}
 	}
 
+	/**
+	 * Emits x and u cut into one slice per reducer, keyed by the slice
+	 * number, so the consensus of every slice is formed in parallel. Each
+	 * slice carries the ||x||^2 of the unrelaxed x for the primal residual.
+	 * With activeColumns
+	 * set, x and u hold those columns only and are scattered into the
+	 * slices, which then also carry a count of 1 for every column held.
+	 */
+	private void writeSlices(AdmmReducerContext reducerContext,
+			double[] xUnrelaxed, int[] activeColumns, int numCols,
+			Context context) throws IOException, InterruptedException {
+		double[] xUpdated = reducerContext.getXUpdated();
+		double[] uInitial = reducerContext.getUInitial();
+		int numSlices = Math.max(1, context.getNumReduceTasks());
+		int active = 0;
+		for (int slice = 0; slice < numSlices; slice++) {
+			int from = AdmmConsensus.sliceStart(slice, numSlices, numCols);
+			int to = AdmmConsensus.sliceStart(slice + 1, numSlices, numCols);
+			double[] x;
+			double[] u;
+			double[] counts = null;
+			double xSquaredNorm = 0.0;
+			if (null == activeColumns) {
+				x = Arrays.copyOfRange(xUpdated, from, to);
+				u = Arrays.copyOfRange(uInitial, from, to);
+				for (int i = from; i < to; i++) {
+					xSquaredNorm += xUnrelaxed[i] * xUnrelaxed[i];
+				}
+			} else {
+				x = new double[to - from];
+				u = new double[to - from];
+				counts = new double[to - from];
+				for (; active < activeColumns.length
+						&& activeColumns[active] < to; active++) {
+					int i = activeColumns[active] - from;
+					x[i] = xUpdated[active];
+					u[i] = uInitial[active];
+					counts[i] = 1.0;
+					xSquaredNorm += xUnrelaxed[active] * xUnrelaxed[active];
+				}
+			}
+			AdmmReducerContext sliceContext = new AdmmReducerContext(null, u,
+					x, null, reducerContext.getPrimalObjectiveValue(),
+					reducerContext.getRho(), reducerContext.getLambdaValue(),
+					reducerContext.getCount(), xSquaredNorm, counts);
+			context.write(new IntWritable(slice),
+					new AdmmReducerContextWritable(sliceContext,
+							singlePrecision));
+		}
+	}
+
 	private AdmmReducerContext localMapperOptimization(AdmmMapperContext context) {
 		LogisticL2DiffFunction myFunction = new LogisticL2DiffFunction(
-				context.getA(), context.getB(), context.getRho(),
-				context.getUInitial(), context.getZInitial());
+				context.getA(), context.getRho(), context.getUInitial(),
+				context.getZInitial(), executor, numThreads);
 		// Ctx optimizationContext = new Ctx(context.getXInitial());
 
 		LOG.info("Minimize Logistic Function using LBFGS....");
-		double[] optimum = lbfgs.minimize((DiffFunction) myFunction, 1e-10,
-				context.getXInitial());
+		double[] optimum = AdmmConsensus.minimizeLocal(lbfgs, myFunction,
+				context.getXInitial(), lbfgsTolerance, lbfgsMaxIterations);
 		// for (int d = 0; d < optimum.length; ++d) {
 		// optimizationContext.m_optimumX[d] = optimum[d];
 		// }
@@ -169,10 +303,13 @@ public class AdmmIterationMapper
 	}
 
 	private AdmmMapperContext assembleMapperContextFromCache(
-			Vector[] inputSplitData, String splitId) throws IOException {
+			CompressedRowMatrix inputSplitData, String splitId,
+			int[] activeColumns) throws IOException {
 		try {
 			AdmmMapperContext preContext = readPreviousAdmmMapperContext(
-					splitId, previousIntermediateOutputLocationPath, fs, conf);
+					splitId, previousIntermediateOutputLocationPath, fs, conf,
+					activeColumns);
+			AdmmConsensus.rescaleU(preContext.getUInitial(), uScale);
 			return new AdmmMapperContext(splitId, inputSplitData,
 					preContext.getUInitial(), preContext.getXInitial(),
 					preContext.getZInitial(), preContext.getRho(),
@@ -185,4 +322,29 @@ public class AdmmIterationMapper
 					+ e.getMessage());
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Starts x and z from the z of a previous model and u from zero. The
+	 * previous z is truncated or zero-padded to the current dimension.
+	 */
+	private AdmmMapperContext assembleMapperContextFromWarmStart(
+			CompressedRowMatrix inputSplitData, int[] activeColumns,
+			int numCols) throws IOException {
+		Path warmStartPath = new Path(warmStartLocation);
+		AdmmReducerContext previous = readAdmmReducerContext(warmStartPath,
+				warmStartPath.getFileSystem(conf), conf);
+		double[] zInitial = Arrays.copyOf(previous.getZUpdated(), numCols);
+		if (null != activeColumns) {
+			double[] zActive = new double[activeColumns.length];
+			for (int j = 0; j < activeColumns.length; j++) {
+				zActive[j] = zInitial[activeColumns[j]];
+			}
+			zInitial = zActive;
+		}
+		double warmRho = previous.getRho() > 0 ? previous.getRho() : rho;
+		LOG.info("Warm start split {} from {}", splitId, warmStartPath);
+		return new AdmmMapperContext(splitId, inputSplitData,
+				new double[zInitial.length], zInitial.clone(), zInitial,
+				warmRho, regularizationFactor, -1, -1, -1);
+	}
+}
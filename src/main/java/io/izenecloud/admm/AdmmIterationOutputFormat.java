@@ -5,6 +5,7 @@ import java.io.IOException;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.SequenceFile.CompressionType;
 import org.apache.hadoop.io.compress.CompressionCodec;
@@ -40,17 +41,29 @@ public class AdmmIterationOutputFormat<K, V> extends
 		Path file = getDefaultWorkFile(context, "");
 
 		FileSystem fs = file.getFileSystem(conf);
-		Class<?> valClass = conf.getClass(
-				"com.b5m.admm.iteration.output.class", valueClass);
-		return SequenceFile.createWriter(fs, conf, file, keyClass, valClass,
+		return SequenceFile.createWriter(fs, conf, file, keyClass, valueClass,
 				compressionType, codec, context);
 	}
 
 	public RecordWriter<K, V> getRecordWriter(TaskAttemptContext context)
 			throws IOException, InterruptedException {
+		Class<?> valueClass = context.getConfiguration().getClass(
+				"com.b5m.admm.iteration.output.class",
+				context.getOutputValueClass());
+		return getRecordWriter(context, context.getOutputKeyClass(),
+				valueClass);
+	}
+
+	/**
+	 * A writer of keyClass and valueClass records whatever the output
+	 * classes of the job, for the files a task writes beside the job output,
+	 * as X- and U- of a mapper keyed by {@link NullWritable}.
+	 */
+	public RecordWriter<K, V> getRecordWriter(TaskAttemptContext context,
+			Class<?> keyClass, Class<?> valueClass) throws IOException {
 
-		final SequenceFile.Writer out = getSequenceWriter(context,
-				context.getOutputKeyClass(), context.getOutputValueClass());
+		final SequenceFile.Writer out = getSequenceWriter(context, keyClass,
+				valueClass);
 
 		return new RecordWriter<K, V>() {
 
@@ -71,7 +84,9 @@ public class AdmmIterationOutputFormat<K, V> extends
 		String outputName = context.getConfiguration().get(
 				"com.b5m.admm.iteration.output.name");
 		if (null == outputName) {
-			return new Path(committer.getWorkPath(), "Z");
+			// one consensus slice file per reducer
+			return new Path(committer.getWorkPath(), String.format("Z-%05d",
+					context.getTaskAttemptID().getTaskID().getId()));
 		}
 		return new Path(FileOutputFormat.getOutputPath(context), outputName);
 	}
@@ -1,157 +1,110 @@
 package io.izenecloud.admm;
 
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.NullWritable;
-import org.apache.hadoop.io.Writable;
-import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.mapreduce.Reducer;
-import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-
-import static io.izenecloud.admm.AdmmIterationHelper.*;
-
+import java.util.Arrays;
+
+/**
+ * Forms the consensus of the x and u slices routed to this reducer. Every
+ * slice is written with its averaged x and u and its z; the driver stitches
+ * the slices together and takes the global convergence and rho decision.
+ * The share of the slice in the residuals and the objective is published as
+ * {@link AdmmIterationCounter}s.
+ */
 public class AdmmIterationReducer
 		extends
-		Reducer<NullWritable, AdmmReducerContextWritable, NullWritable, AdmmReducerContextWritable> {
+		Reducer<IntWritable, AdmmReducerContextWritable, IntWritable, AdmmReducerContextWritable> {
 	private static final Logger LOG = LoggerFactory
 			.getLogger(AdmmIterationReducer.class);
 
-	private static final double SQUARE_ROOT_POWER = 0.5;
-	private static final double RHO_INCREMENT_MULTIPLIER = 1.5;
-	private static final double RHO_DECREMENT_MULTIPLIER = 1.5;
-	private static final double RHO_UPDATE_THRESHOLD = 5;
-	private static final double THRESHOLD = 0.001;
-
 	private boolean regularizeIntercept;
-	private double[] xUpdated;
-	private double[] uInital;
-	private long count;
-	private double rho;
-	private double lambda;
-	private double zMultiplier;
+	private double l1;
+	private double[] zPrevious;
+	private double relaxation;
 
 	@Override
 	protected void setup(Context context) throws IOException,
 			InterruptedException {
 		Configuration conf = context.getConfiguration();
 		regularizeIntercept = conf.getBoolean("regularize.intercept", false);
-
-		xUpdated = null;
-		uInital = null;
-		count = 0;
+		l1 = conf.getFloat("admm.l1.factor", 0.0f);
+		zPrevious = AdmmIterationHelper.readPreviousZ(conf);
+		relaxation = conf.getFloat("admm.relaxation",
+				AdmmConsensus.DEFAULT_RELAXATION);
 	}
 
-	protected void reduce(NullWritable key,
+	protected void reduce(IntWritable key,
 			Iterable<AdmmReducerContextWritable> values, Context context)
 			throws IOException, InterruptedException {
-
-		for (AdmmReducerContextWritable reducerContextWritable : values) {
-			AdmmReducerContext reducerContext = reducerContextWritable.get();
-			if (null == this.xUpdated) {
-				this.xUpdated = reducerContext.getXUpdated();
-				this.uInital = reducerContext.getUInitial();
-				this.rho = reducerContext.getRho();
-				this.lambda = reducerContext.getLambdaValue();
-				this.count = reducerContext.getCount();
-			} else {
-				double[] xUpdated = reducerContext.getXUpdated();
-				for (int i = 0; i < xUpdated.length; i++) {
-					this.xUpdated[i] += xUpdated[i];
-				}
-				double[] uInital = reducerContext.getUInitial();
-				for (int i = 0; i < uInital.length; i++) {
-					this.uInital[i] += uInital[i];
-				}
-				this.count += reducerContext.getCount();
+		AdmmReducerContext sum = AdmmIterationCombiner.sum(values);
+		long count = sum.getCount();
+		double[] xUpdated = sum.getXUpdated();
+		double[] uInital = sum.getUInitial();
+
+		double[] counts = sum.getCounts();
+		double[] zUpdated;
+		// only the first slice holds the intercept
+		boolean regularizeFirst = regularizeIntercept || 0 != key.get();
+		if (null == counts) {
+			for (int i = 0; i < xUpdated.length; i++) {
+				xUpdated[i] /= count;
+				uInital[i] /= count;
 			}
-		}
-	}
-
-	protected void cleanup(Context context) throws IOException,
-			InterruptedException {
-
-		for (int i = 0; i < xUpdated.length; i++) {
-			xUpdated[i] /= count;
-		}
-
-		for (int i = 0; i < uInital.length; i++) {
-			uInital[i] /= count;
-		}
-
-		this.zMultiplier = this.rho * this.count
-				/ (this.rho * this.count + 2 * this.lambda);
-		double[] zUpdated = new double[xUpdated.length];
-		for (int i = 0; i < zUpdated.length; i++) {
-			zUpdated[i] /= this.count;
-			if (i == 0 && !regularizeIntercept) {
-				zUpdated[i] = xUpdated[i] + uInital[i];
-			} else {
-				zUpdated[i] = (xUpdated[i] + uInital[i]) * this.zMultiplier;
+			zUpdated = AdmmConsensus.updateZ(xUpdated, uInital, sum.getRho(),
+					sum.getLambdaValue(), l1, count, regularizeFirst);
+		} else {
+			for (int i = 0; i < xUpdated.length; i++) {
+				if (0 != counts[i]) {
+					xUpdated[i] /= counts[i];
+					uInital[i] /= counts[i];
+				}
 			}
+			zUpdated = AdmmConsensus.updateZ(xUpdated, uInital, sum.getRho(),
+					sum.getLambdaValue(), l1, counts, regularizeFirst);
 		}
-
-		Configuration conf = context.getConfiguration();
-		Path outputPath = FileOutputFormat.getOutputPath(context);
-		FileSystem fs = outputPath.getFileSystem(conf);
-
-		LOG.info("calculating sNorm and rNorm");
-		double sNorm = calculateSNorm(uInital, xUpdated);
-		double rNorm = calculateRNorm(outputPath, xUpdated, fs, conf);
-
-		LOG.info("rNorm = {}, sNorm = {}", rNorm, sNorm);
-		if (rNorm > THRESHOLD || sNorm > THRESHOLD) {
-			context.getCounter(IterationCounter.ITERATION).increment(1);
-			LOG.info("increment IterationCounter = {}",
-					context.getCounter(IterationCounter.ITERATION).getValue());
-		}
-
-		double rhoMultiplier = 0;
-		if (rNorm > RHO_UPDATE_THRESHOLD * sNorm) {
-			rhoMultiplier = RHO_INCREMENT_MULTIPLIER;
-		} else if (sNorm > RHO_UPDATE_THRESHOLD * rNorm) {
-			rhoMultiplier = 1.0 / RHO_DECREMENT_MULTIPLIER;
+		LOG.info("slice {}: {} coordinates from {} splits", new Object[] {
+				key.get(), zUpdated.length, count });
+
+		int from = null == zPrevious ? 0 : AdmmConsensus.sliceStart(
+				key.get(), context.getNumReduceTasks(), zPrevious.length);
+		double[] zInitial = null == zPrevious || from >= zPrevious.length ? new double[zUpdated.length]
+				: Arrays.copyOfRange(zPrevious, from, from + zUpdated.length);
+		// every mapper relaxed its x towards the z this iteration started
+		// from, the residual is on the x before
+		double[] xAverage = AdmmConsensus.unrelax(xUpdated, zInitial,
+				relaxation);
+		double rNorm;
+		double sNorm;
+		if (null == counts) {
+			rNorm = AdmmConsensus.rNorm(sum.getXSquaredNorm(), xAverage,
+					zUpdated, count);
+			sNorm = AdmmConsensus.sNorm(zUpdated, zInitial, sum.getRho(), count);
 		} else {
-			rhoMultiplier = 1.0;
-		}
-
-		AdmmReducerContext reducerContext = new AdmmReducerContext(null, null,
-				null, zUpdated, 0.0, rho * rhoMultiplier, lambda, (long) 0);
-
-		context.write(NullWritable.get(), new AdmmReducerContextWritable(
-				reducerContext));
-	}
-
-	public static enum IterationCounter {
-		ITERATION
-	}
-
-	private double calculateRNorm(Path outputPath, double[] xUpdated,
-			FileSystem fs, Configuration conf) {
-		double result = 0.0;
-		try {
-			result = calculateR(outputPath, fs, conf, xUpdated);
-		} catch (IOException e) {
-			e.printStackTrace();
+			rNorm = AdmmConsensus.rNorm(sum.getXSquaredNorm(), xAverage,
+					zUpdated, counts);
+			sNorm = AdmmConsensus.sNorm(zUpdated, zInitial, sum.getRho(),
+					counts);
 		}
-		result = Math.pow(result, SQUARE_ROOT_POWER);
-		return result;
+		// every slice carries the total loss, count it with the first only
+		double objective = AdmmConsensus.objective(
+				0 == key.get() ? sum.getPrimalObjectiveValue() : 0.0,
+				zUpdated, sum.getLambdaValue(), l1, regularizeFirst);
+		context.getCounter(AdmmIterationCounter.PRIMAL_RESIDUAL_SQUARED)
+				.increment(AdmmIterationCounter.toCounter(rNorm * rNorm));
+		context.getCounter(AdmmIterationCounter.DUAL_RESIDUAL_SQUARED)
+				.increment(AdmmIterationCounter.toCounter(sNorm * sNorm));
+		context.getCounter(AdmmIterationCounter.OBJECTIVE).increment(
+				AdmmIterationCounter.toCounter(objective));
+
+		AdmmReducerContext reducerContext = new AdmmReducerContext(null,
+				uInital, xUpdated, zUpdated, sum.getPrimalObjectiveValue(),
+				sum.getRho(), sum.getLambdaValue(), count,
+				sum.getXSquaredNorm(), counts);
+		context.write(key, new AdmmReducerContextWritable(reducerContext));
 	}
-
-	private double calculateSNorm(double[] xInitial, double[] xUpdated) {
-		double result = 0.0;
-		for (int i = 0; i < xUpdated.length; i++) {
-			result += Math.pow(xUpdated[i] - xInitial[i], 2);
-		}
-		result *= Math.pow(rho, 2);
-		result *= this.count;
-		result = Math.pow(result, SQUARE_ROOT_POWER);
-
-		return result;
-	}
-
 }
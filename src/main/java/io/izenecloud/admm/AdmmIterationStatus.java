@@ -0,0 +1,151 @@
+package io.izenecloud.admm;
+
+/**
+ * Residuals, tolerances and objective of one ADMM iteration, as judged on
+ * the stitched consensus. One line of the HISTORY file.
+ */
+public class AdmmIterationStatus {
+	public static final String HEADER = "iteration\tobjective\trNorm\tsNorm\tepsPrimal\tepsDual\trho";
+
+	private final int iteration;
+	private final double objective;
+	private final double rNorm;
+	private final double sNorm;
+	private final double epsPrimal;
+	private final double epsDual;
+	private final double rho;
+	private double nextRho;
+
+	public AdmmIterationStatus(int iteration, double objective, double rNorm,
+			double sNorm, double epsPrimal, double epsDual, double rho) {
+		this.iteration = iteration;
+		this.objective = objective;
+		this.rNorm = rNorm;
+		this.sNorm = sNorm;
+		this.epsPrimal = epsPrimal;
+		this.epsDual = epsDual;
+		this.rho = rho;
+		this.nextRho = rho;
+	}
+
+	/**
+	 * Judges the consensus of one iteration: consensus holds the averaged x
+	 * and u, the new z, the summed losses and ||x_i||^2 and the rho it was
+	 * computed with; zPrevious is the z the iteration started from. ||u|| is
+	 * taken as sqrt(count) * ||uAverage||, which never exceeds the norm of
+	 * the stacked u_i, so the dual tolerance errs on the strict side.
+	 */
+	public static AdmmIterationStatus of(int iteration,
+			AdmmReducerContext consensus, double[] zPrevious,
+			boolean regularizeIntercept, double absolute, double relative) {
+		return of(iteration, consensus, zPrevious, 0.0, regularizeIntercept,
+				absolute, relative);
+	}
+
+	/**
+	 * As {@link #of(int, AdmmReducerContext, double[], boolean, double,
+	 * double)} for an elastic-net consensus with l1 factor l1.
+	 */
+	public static AdmmIterationStatus of(int iteration,
+			AdmmReducerContext consensus, double[] zPrevious, double l1,
+			boolean regularizeIntercept, double absolute, double relative) {
+		return of(iteration, consensus, consensus.getXUpdated(), zPrevious,
+				l1, regularizeIntercept, absolute, relative);
+	}
+
+	/**
+	 * With over-relaxation the consensus holds the average of the relaxed
+	 * x, the primal residual is taken on xAverage, the average of the x
+	 * before relaxation, whose squared norms the consensus carries.
+	 */
+	public static AdmmIterationStatus of(int iteration,
+			AdmmReducerContext consensus, double[] xAverage,
+			double[] zPrevious, double l1, boolean regularizeIntercept,
+			double absolute, double relative) {
+		double[] uAverage = consensus.getUInitial();
+		double[] z = consensus.getZUpdated();
+		double[] counts = consensus.getCounts();
+		double rho = consensus.getRho();
+		long count = consensus.getCount();
+
+		double p;
+		double rNorm;
+		double sNorm;
+		double zSquaredNorm;
+		double uSquaredNorm;
+		if (null == counts) {
+			p = (double) count * z.length;
+			rNorm = AdmmConsensus.rNorm(consensus.getXSquaredNorm(), xAverage,
+					z, count);
+			sNorm = AdmmConsensus.sNorm(z, zPrevious, rho, count);
+			zSquaredNorm = AdmmConsensus.squaredNorm(z, count);
+			uSquaredNorm = AdmmConsensus.squaredNorm(uAverage, count);
+		} else {
+			p = 0.0;
+			for (int i = 0; i < counts.length; i++) {
+				p += counts[i];
+			}
+			rNorm = AdmmConsensus.rNorm(consensus.getXSquaredNorm(), xAverage,
+					z, counts);
+			sNorm = AdmmConsensus.sNorm(z, zPrevious, rho, counts);
+			zSquaredNorm = AdmmConsensus.squaredNorm(z, counts);
+			uSquaredNorm = AdmmConsensus.squaredNorm(uAverage, counts);
+		}
+		return new AdmmIterationStatus(iteration, AdmmConsensus.objective(
+				consensus.getPrimalObjectiveValue(), z,
+				consensus.getLambdaValue(), l1, regularizeIntercept), rNorm,
+				sNorm,
+				AdmmConsensus.epsPrimal(p, consensus.getXSquaredNorm(),
+						zSquaredNorm, absolute, relative),
+				AdmmConsensus.epsDual(p, uSquaredNorm, rho, absolute, relative),
+				rho);
+	}
+
+	public boolean converged() {
+		return AdmmConsensus.converged(rNorm, sNorm, epsPrimal, epsDual);
+	}
+
+	public int getIteration() {
+		return iteration;
+	}
+
+	public double getObjective() {
+		return objective;
+	}
+
+	public double getRNorm() {
+		return rNorm;
+	}
+
+	public double getSNorm() {
+		return sNorm;
+	}
+
+	public double getEpsPrimal() {
+		return epsPrimal;
+	}
+
+	public double getEpsDual() {
+		return epsDual;
+	}
+
+	public double getRho() {
+		return rho;
+	}
+
+	/**
+	 * The rho chosen for the next iteration.
+	 */
+	public double getNextRho() {
+		return nextRho;
+	}
+
+	void setNextRho(double nextRho) {
+		this.nextRho = nextRho;
+	}
+
+	public String toString() {
+		return iteration + "\t" + objective + "\t" + rNorm + "\t" + sNorm
+				+ "\t" + epsPrimal + "\t" + epsDual + "\t" + rho;
+	}
+}
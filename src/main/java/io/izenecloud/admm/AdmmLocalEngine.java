@@ -0,0 +1,499 @@
+package io.izenecloud.admm;
+
+import static io.izenecloud.HDFSHelper.getFilePaths;
+import static io.izenecloud.admm.AdmmIterationHelper.readAdmmReducerContext;
+import static io.izenecloud.admm.AdmmIterationHelper.writeHistory;
+import static io.izenecloud.admm.AdmmIterationHelper.writeAdmmReducerContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.mahout.common.HadoopUtil;
+import org.apache.mahout.math.VectorWritable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs all ADMM iterations inside one JVM. The training data is dealt out
+ * to a fixed set of workers once; every worker keeps its split packed in
+ * memory together with its x and u, and only x/u/z vectors are exchanged
+ * between iterations. The update steps are the ones of
+ * {@link AdmmIterationMapper} and {@link AdmmIterationReducer}, so the
+ * result matches the MapReduce engine with as many map tasks as workers.
+ * With a quorum below 1 the engine runs with bounded staleness and does
+ * not wait for stragglers, see {@link #iterate(int)}.
+ */
+public class AdmmLocalEngine {
+	private static final Logger LOG = LoggerFactory
+			.getLogger(AdmmLocalEngine.class);
+	private static final float DEFAULT_RHO = 0.1f;
+
+	private static final int DEFAULT_MAX_STALENESS = 2;
+
+	private final List<Worker> workers;
+	private final int n;
+	private final ExecutorService executor;
+	private final CompletionService<Report> completion;
+	private final boolean regularizeIntercept;
+	private final double lambda;
+	private double l1;
+	private double absoluteTolerance = AdmmConsensus.DEFAULT_ABSOLUTE_TOLERANCE;
+	private double relativeTolerance = AdmmConsensus.DEFAULT_RELATIVE_TOLERANCE;
+	private double relaxation = AdmmConsensus.DEFAULT_RELAXATION;
+	private RhoUpdater rhoUpdater = new ResidualBalancingRhoUpdater();
+	private boolean inexact;
+	private double toleranceMin;
+	private double toleranceMax;
+	private double lbfgsTolerance = AdmmConsensus.LBFGS_TOLERANCE;
+	private int lbfgsMaxIterations;
+	private double quorum = 1.0;
+	private int maxStaleness = DEFAULT_MAX_STALENESS;
+	private double rho;
+	private double[] z;
+
+	public AdmmLocalEngine(List<CompressedRowMatrix> splits, double rho,
+			double lambda, boolean regularizeIntercept) {
+		this(splits, rho, lambda, regularizeIntercept, null);
+	}
+
+	/**
+	 * Runs the workers on the given executor, or on a pool of one thread
+	 * per worker when it is null.
+	 */
+	public AdmmLocalEngine(List<CompressedRowMatrix> splits, double rho,
+			double lambda, boolean regularizeIntercept, ExecutorService executor) {
+		this.workers = new ArrayList<Worker>(splits.size());
+		for (CompressedRowMatrix a : splits) {
+			if (a.numRows() > 0) {
+				workers.add(new Worker(a));
+			}
+		}
+		if (workers.isEmpty()) {
+			throw new IllegalArgumentException("no training data");
+		}
+		this.n = workers.get(0).a.numCols();
+		this.executor = null == executor ? Executors
+				.newFixedThreadPool(workers.size()) : executor;
+		this.completion = new ExecutorCompletionService<Report>(this.executor);
+		this.rho = rho;
+		this.lambda = lambda;
+		this.regularizeIntercept = regularizeIntercept;
+	}
+
+	public static int run(Path signalData, Path output,
+			float regularizationFactor, boolean addIntercept,
+			boolean regularizeIntercept, int iterationsMaximum,
+			Configuration conf) throws IOException {
+		int numWorkers = conf.getInt("admm.local.num.workers", Runtime
+				.getRuntime().availableProcessors());
+		FileSystem fs = output.getFileSystem(conf);
+		HadoopUtil.delete(conf, output);
+
+		List<CompressedRowMatrix> splits = readSplits(signalData, numWorkers,
+				addIntercept, conf);
+		AdmmLocalEngine engine = new AdmmLocalEngine(splits, conf.getFloat(
+				"rho", DEFAULT_RHO), regularizationFactor, regularizeIntercept);
+		engine.setTolerances(conf.getFloat("admm.tolerance.absolute",
+				AdmmConsensus.DEFAULT_ABSOLUTE_TOLERANCE), conf.getFloat(
+				"admm.tolerance.relative",
+				AdmmConsensus.DEFAULT_RELATIVE_TOLERANCE));
+		engine.setRelaxation(conf.getFloat("admm.relaxation",
+				AdmmConsensus.DEFAULT_RELAXATION));
+		engine.setL1(conf.getFloat("admm.l1.factor", 0.0f));
+		engine.setRhoUpdater(AdmmOptimizerDriver.newRhoUpdater(conf));
+		engine.setLbfgs(conf);
+		engine.setLbfgsMaxIterations(conf.getInt("admm.lbfgs.max.iterations",
+				0));
+		if (conf.getBoolean("admm.lbfgs.inexact", false)) {
+			engine.setInexact(conf.getFloat("admm.lbfgs.tolerance.min",
+					AdmmConsensus.DEFAULT_INEXACT_TOLERANCE_MIN), conf.getFloat(
+					"admm.lbfgs.tolerance.max",
+					AdmmConsensus.DEFAULT_INEXACT_TOLERANCE_MAX));
+		}
+		engine.setStaleness(conf.getFloat("admm.local.quorum", 1.0f),
+				conf.getInt("admm.local.max.staleness", DEFAULT_MAX_STALENESS));
+		String warmStartLocation = conf.get("admm.warm.start.location");
+		if (null != warmStartLocation) {
+			Path warmStartPath = new Path(warmStartLocation);
+			engine.warmStart(readAdmmReducerContext(warmStartPath,
+					warmStartPath.getFileSystem(conf), conf));
+		}
+		try {
+			List<AdmmIterationStatus> history = new ArrayList<AdmmIterationStatus>();
+			int iterationNumber = 0;
+			boolean converged = false;
+			while (!converged && iterationNumber <= iterationsMaximum) {
+				AdmmIterationStatus status = engine.iterate(iterationNumber);
+				history.add(status);
+				writeHistory(history, new Path(output,
+						AdmmOptimizerDriver.HISTORY), fs);
+				converged = status.converged();
+				iterationNumber++;
+			}
+		} finally {
+			engine.shutdown();
+		}
+
+		Path finalOutput = new Path(output, AdmmOptimizerDriver.FINAL_MODEL);
+		writeAdmmReducerContext(new AdmmReducerContext(null, null, null,
+				engine.getZ(), 0.0, engine.getRho(), engine.lambda, 0L),
+				finalOutput, fs, conf);
+		return 0;
+	}
+
+	/**
+	 * Deals the training rows round robin to numSplits packed splits.
+	 */
+	@SuppressWarnings("deprecation")
+	static List<CompressedRowMatrix> readSplits(Path signalData,
+			int numSplits, boolean addIntercept, Configuration conf)
+			throws IOException {
+		FileSystem fs = signalData.getFileSystem(conf);
+		List<CompressedRowMatrix.Builder> builders = new ArrayList<CompressedRowMatrix.Builder>(
+				numSplits);
+		for (int i = 0; i < numSplits; i++) {
+			builders.add(new CompressedRowMatrix.Builder(addIntercept));
+		}
+
+		Text key = new Text();
+		VectorWritable value = new VectorWritable();
+		long row = 0;
+		for (Path file : getFilePaths(conf, fs, signalData)) {
+			SequenceFile.Reader reader = new SequenceFile.Reader(fs, file,
+					conf);
+			try {
+				while (reader.next(key, value)) {
+					// ignore per clustering records
+					if (key.toString().contains("|clustering")) {
+						continue;
+					}
+					builders.get((int) (row++ % numSplits)).append(
+							value.get());
+				}
+			} finally {
+				reader.close();
+			}
+		}
+
+		List<CompressedRowMatrix> splits = new ArrayList<CompressedRowMatrix>(
+				numSplits);
+		for (CompressedRowMatrix.Builder builder : builders) {
+			splits.add(builder.build());
+		}
+		LOG.info("Read {} rows into {} splits", row, numSplits);
+		return splits;
+	}
+
+	/**
+	 * Absolute and relative tolerances of the residual stopping rule.
+	 */
+	public void setTolerances(double absolute, double relative) {
+		this.absoluteTolerance = absolute;
+		this.relativeTolerance = relative;
+	}
+
+	/**
+	 * Over-relaxation alpha of the x handed to the z- and u-updates.
+	 */
+	public void setRelaxation(double relaxation) {
+		this.relaxation = relaxation;
+	}
+
+	/**
+	 * l1 factor of the elastic-net z-update, 0 for plain l2.
+	 */
+	public void setL1(double l1) {
+		this.l1 = l1;
+	}
+
+	public void setRhoUpdater(RhoUpdater rhoUpdater) {
+		this.rhoUpdater = rhoUpdater;
+	}
+
+	/**
+	 * Solves the local problems inexactly, to a tolerance that starts at
+	 * maximum and tightens towards minimum with the residuals.
+	 */
+	public void setInexact(double minimum, double maximum) {
+		this.inexact = true;
+		this.toleranceMin = minimum;
+		this.toleranceMax = maximum;
+		this.lbfgsTolerance = maximum;
+	}
+
+	/**
+	 * Configures the minimizers of the workers like the ones of the mappers.
+	 * Unlike a mapper, a worker keeps its L-BFGS curvature pairs from one
+	 * round to the next.
+	 */
+	public void setLbfgs(Configuration conf) {
+		for (Worker worker : workers) {
+			worker.lbfgs = AdmmConsensus.newLbfgs(conf);
+			worker.lbfgs.setKeepHistory(true);
+		}
+	}
+
+	/**
+	 * Caps every local solve at the given number of L-BFGS iterations, 0
+	 * for no cap.
+	 */
+	public void setLbfgsMaxIterations(int maxIterations) {
+		this.lbfgsMaxIterations = maxIterations;
+	}
+
+	/**
+	 * Bounded staleness: the consensus of an iteration waits for the given
+	 * fraction of the workers only, while no worker may lag more than
+	 * maxStaleness iterations behind. A quorum of 1 is synchronous ADMM.
+	 */
+	public void setStaleness(double quorum, int maxStaleness) {
+		this.quorum = quorum;
+		this.maxStaleness = maxStaleness;
+	}
+
+	/**
+	 * Starts the first iteration from the z of a previous model instead of
+	 * zero, truncated or zero-padded to the current dimension.
+	 */
+	public void warmStart(AdmmReducerContext previous) {
+		z = Arrays.copyOf(previous.getZUpdated(), n);
+		for (Worker worker : workers) {
+			worker.xInitial = z.clone();
+		}
+		if (previous.getRho() > 0) {
+			rho = previous.getRho();
+		}
+	}
+
+	/**
+	 * Runs one ADMM iteration and returns its residuals. Idle workers are
+	 * started on the current z; the consensus is formed once the quorum of
+	 * workers has reported and no worker's last report is more than
+	 * maxStaleness iterations old. Workers still running contribute their
+	 * last report and are folded in with their new one in a later
+	 * iteration.
+	 */
+	public AdmmIterationStatus iterate(int iterationNumber) {
+		for (Worker worker : workers) {
+			if (null == worker.pending) {
+				worker.start(iterationNumber);
+			}
+		}
+		int quorumSize = (int) Math.ceil(quorum * workers.size());
+		int reported = 0;
+		while (reported < quorumSize || mustWait(iterationNumber)) {
+			take();
+			reported++;
+		}
+		// fold in whatever else has finished meanwhile
+		while (poll()) {
+			reported++;
+		}
+		if (reported < workers.size()) {
+			LOG.info("Iteration {}: {} of {} workers reported", new Object[] {
+					iterationNumber, reported, workers.size() });
+		}
+
+		long count = workers.size();
+		double[] xAverage = new double[n];
+		double[] uAverage = new double[n];
+		// stale workers relaxed towards older z, so the x before relaxation
+		// is averaged rather than recovered
+		double[] xResidual = new double[n];
+		double xSquaredNorm = 0.0;
+		double loss = 0.0;
+		for (Worker worker : workers) {
+			Report report = worker.report;
+			// u is scaled by the rho the report was computed with
+			double scale = report.rho / rho;
+			for (int i = 0; i < n; i++) {
+				xAverage[i] += report.x[i];
+				uAverage[i] += report.u[i] * scale;
+				xResidual[i] += report.xUnrelaxed[i];
+				xSquaredNorm += report.xUnrelaxed[i] * report.xUnrelaxed[i];
+			}
+			loss += report.loss;
+		}
+		for (int i = 0; i < n; i++) {
+			xAverage[i] /= count;
+			uAverage[i] /= count;
+			xResidual[i] /= count;
+		}
+
+		double[] zPrevious = null == z ? new double[n] : z;
+		z = AdmmConsensus.updateZ(xAverage, uAverage, rho, lambda, l1, count,
+				regularizeIntercept);
+		AdmmReducerContext consensus = new AdmmReducerContext(null, uAverage,
+				xAverage, z, loss, rho, lambda, count, xSquaredNorm);
+		AdmmIterationStatus status = AdmmIterationStatus.of(iterationNumber,
+				consensus, xResidual, zPrevious, l1, regularizeIntercept,
+				absoluteTolerance, relativeTolerance);
+		LOG.info("Iteration {}: {}", iterationNumber, status);
+		status.setNextRho(rhoUpdater.update(status, consensus, zPrevious));
+		rho = status.getNextRho();
+		if (inexact) {
+			lbfgsTolerance = AdmmConsensus.localTolerance(status,
+					toleranceMin, toleranceMax);
+		}
+		return status;
+	}
+
+	public double[] getZ() {
+		return z;
+	}
+
+	public double getRho() {
+		return rho;
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Whether a running worker has not reported yet or only from more than
+	 * maxStaleness iterations ago.
+	 */
+	private boolean mustWait(int iterationNumber) {
+		for (Worker worker : workers) {
+			if (null != worker.pending
+					&& (null == worker.report || iterationNumber
+							- worker.report.iteration > maxStaleness)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void take() {
+		try {
+			finish(completion.take());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private boolean poll() {
+		Future<Report> future = completion.poll();
+		if (null == future) {
+			return false;
+		}
+		finish(future);
+		return true;
+	}
+
+	private void finish(Future<Report> future) {
+		try {
+			Report report = future.get();
+			report.worker.report = report;
+			report.worker.pending = null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * The outcome of one x-update of a worker: its relaxed x, the x before
+	 * relaxation, the u it was computed with and the rho and iteration it
+	 * was started in.
+	 */
+	private static class Report {
+		private final Worker worker;
+		private final double[] x;
+		private final double[] xUnrelaxed;
+		private final double[] u;
+		private final double loss;
+		private final double rho;
+		private final int iteration;
+
+		Report(Worker worker, double[] x, double[] xUnrelaxed, double[] u,
+				double loss, double rho, int iteration) {
+			this.worker = worker;
+			this.x = x;
+			this.xUnrelaxed = xUnrelaxed;
+			this.u = u;
+			this.loss = loss;
+			this.rho = rho;
+			this.iteration = iteration;
+		}
+	}
+
+	/**
+	 * Holds one split for the whole run. A worker runs at most one x-update
+	 * at a time; its last report is only replaced by the coordinating
+	 * thread.
+	 */
+	private class Worker {
+		private final CompressedRowMatrix a;
+		private Lbfgs lbfgs;
+		private double[] xInitial;
+		private Report report;
+		private Future<Report> pending;
+
+		Worker(CompressedRowMatrix a) {
+			this.a = a;
+			this.lbfgs = new Lbfgs();
+			this.lbfgs.setKeepHistory(true);
+			this.xInitial = new double[a.numCols()];
+		}
+
+		void start(final int iterationNumber) {
+			final Report previous = report;
+			final double[] zInitial = null == z ? new double[n] : z;
+			final double rhoInitial = rho;
+			final double tolerance = lbfgsTolerance;
+			pending = completion.submit(new Callable<Report>() {
+				public Report call() {
+					return update(previous, zInitial, rhoInitial, tolerance,
+							iterationNumber);
+				}
+			});
+		}
+
+		private Report update(Report previous, double[] zInitial,
+				double rhoInitial, double tolerance, int iterationNumber) {
+			double[] u;
+			double[] x;
+			if (null == previous) {
+				u = new double[n];
+				x = xInitial;
+			} else {
+				u = previous.u.clone();
+				AdmmConsensus.updateU(u, previous.x, zInitial);
+				AdmmConsensus.rescaleU(u, previous.rho / rhoInitial);
+				x = previous.x;
+				// the kept curvature pairs carry the rho of their round
+				if (previous.rho != rhoInitial) {
+					lbfgs.clearHistory();
+				}
+			}
+			LogisticL2DiffFunction function = new LogisticL2DiffFunction(a,
+					rhoInitial, u, zInitial);
+			x = AdmmConsensus.minimizeLocal(lbfgs, function, x, tolerance,
+					lbfgsMaxIterations);
+			double loss = function.evaluatePrimalObjective(x);
+			// as in the mapper, x is kept relaxed for the consensus and the
+			// next u-update, the primal residual is on x itself
+			return new Report(this, AdmmConsensus.relax(x, zInitial,
+					relaxation), x, u, loss, rhoInitial, iterationNumber);
+		}
+	}
+}
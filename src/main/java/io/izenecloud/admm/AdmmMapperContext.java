@@ -1,6 +1,5 @@
 package io.izenecloud.admm;
 
-import org.apache.mahout.math.Vector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -11,9 +10,7 @@ public class AdmmMapperContext {
 	private static final double LAMBDA_VALUE = 1e-6;
 	private String splitId;
 
-	private Vector[] a;
-
-	private double[] b;
+	private CompressedRowMatrix a;
 
 	private double[] uInitial;
 
@@ -31,19 +28,12 @@ public class AdmmMapperContext {
 
 	private double sNorm;
 
-	public AdmmMapperContext(String splitId, Vector[] ab) {
+	public AdmmMapperContext(String splitId, CompressedRowMatrix a) {
 		LOG.info("Initialize AdmmMapperContext, splitId = {}", splitId);
 		this.splitId = splitId;
-		if (null != ab) {
-			this.a = ab;
-			int numCols = this.a[0].size() - 1;
-			int numRows = this.a.length;
-			b = new double[numRows];
-			for (int row = 0; row < numRows; row++) {
-				this.b[row] = this.a[row].get(numCols);
-				this.a[row].set(numCols, 0.0);
-			}
-
+		if (null != a) {
+			this.a = a;
+			int numCols = this.a.numCols();
 			uInitial = new double[numCols];
 			xInitial = new double[numCols];
 			zInitial = new double[numCols];
@@ -58,45 +48,17 @@ public class AdmmMapperContext {
 		LOG.info("Initialize AdmmMapperContext, Finish");
 	}
 
-	public AdmmMapperContext(String splitId, Vector[] ab, double rho) {
-		this(splitId, ab);
-		this.rho = rho;
-	}
-
-	public AdmmMapperContext(String splitId, Vector[] ab, double[] uInitial,
-			double[] xInitial, double[] zInitial, double rho,
-			double lambdaValue, double primalObjectiveValue, double rNorm,
-			double sNorm) {
-		this.splitId = splitId;
-		if (null != ab) {
-			this.a = ab;
-			int numCols = this.a[0].size() - 1;
-			int numRows = this.a.length;
-			b = new double[numRows];
-			for (int row = 0; row < numRows; row++) {
-				b[row] = a[row].get(numCols);
-				a[row].set(numCols, 0.0);
-			}
-		}
-
-		this.uInitial = uInitial;
-		this.xInitial = xInitial;
-		this.zInitial = zInitial;
-
+	public AdmmMapperContext(String splitId, CompressedRowMatrix a, double rho) {
+		this(splitId, a);
 		this.rho = rho;
-		this.lambdaValue = lambdaValue;
-		this.primalObjectiveValue = primalObjectiveValue;
-		this.rNorm = rNorm;
-		this.sNorm = sNorm;
 	}
 
-	public AdmmMapperContext(String splitId, Vector[] a, double[] b,
+	public AdmmMapperContext(String splitId, CompressedRowMatrix a,
 			double[] uInitial, double[] xInitial, double[] zInitial,
 			double rho, double lambdaValue, double primalObjectiveValue,
 			double rNorm, double sNorm) {
 		this.splitId = splitId;
 		this.a = a;
-		this.b = b;
 		this.uInitial = uInitial;
 		this.xInitial = xInitial;
 		this.zInitial = zInitial;
@@ -113,7 +75,6 @@ public class AdmmMapperContext {
 	public void setAdmmMapperContext(AdmmMapperContext context) {
 		this.splitId = context.splitId;
 		this.a = context.a;
-		this.b = context.b;
 		this.uInitial = context.uInitial;
 		this.xInitial = context.xInitial;
 		this.zInitial = context.zInitial;
@@ -124,12 +85,12 @@ public class AdmmMapperContext {
 		this.sNorm = context.sNorm;
 	}
 
-	public Vector[] getA() {
+	public CompressedRowMatrix getA() {
 		return a;
 	}
 
 	public double[] getB() {
-		return b;
+		return null == a ? null : a.getLabels();
 	}
 
 	public double[] getUInitial() {
@@ -1,7 +1,6 @@
 package io.izenecloud.admm;
 
 import org.apache.hadoop.io.DoubleWritable;
-import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
 
@@ -27,30 +26,9 @@ public class AdmmMapperContextWritable implements Writable {
 		Text splitId = new Text();
 		splitId.readFields(in);
 
-		IntWritable len = new IntWritable();
-		len.readFields(in);
-		double[] u = new double[len.get()];
-		for (int i = 0; i < len.get(); ++i) {
-			DoubleWritable writable = new DoubleWritable();
-			writable.readFields(in);
-			u[i] = writable.get();
-		}
-
-		len.readFields(in);
-		double[] x = new double[len.get()];
-		for (int i = 0; i < len.get(); ++i) {
-			DoubleWritable writable = new DoubleWritable();
-			writable.readFields(in);
-			x[i] = writable.get();
-		}
-
-		len.readFields(in);
-		double[] z = new double[len.get()];
-		for (int i = 0; i < len.get(); ++i) {
-			DoubleWritable writable = new DoubleWritable();
-			writable.readFields(in);
-			z[i] = writable.get();
-		}
+		double[] u = DoubleArrayWritable.readArray(in, null);
+		double[] x = DoubleArrayWritable.readArray(in, null);
+		double[] z = DoubleArrayWritable.readArray(in, null);
 
 		DoubleWritable rho = new DoubleWritable();
 		rho.readFields(in);
@@ -67,28 +45,16 @@ public class AdmmMapperContextWritable implements Writable {
 		DoubleWritable sNorm = new DoubleWritable();
 		sNorm.readFields(in);
 
-		context = new AdmmMapperContext(splitId.toString(), null, null, u, x,
-				z, rho.get(), lambda.get(), primalObjectiveValue.get(),
+		context = new AdmmMapperContext(splitId.toString(), null, u, x, z,
+				rho.get(), lambda.get(), primalObjectiveValue.get(),
 				rNorm.get(), sNorm.get());
 	}
 
 	public void write(DataOutput out) throws IOException {
 		new Text(context.getSplitId()).write(out);
-		double[] u = context.getUInitial();
-		new IntWritable(u.length).write(out);
-		for (double e : u) {
-			new DoubleWritable(e).write(out);
-		}
-		double[] x = context.getXInitial();
-		new IntWritable(x.length).write(out);
-		for (double e : x) {
-			new DoubleWritable(e).write(out);
-		}
-		double[] z = context.getZInitial();
-		new IntWritable(z.length).write(out);
-		for (double e : z) {
-			new DoubleWritable(e).write(out);
-		}
+		DoubleArrayWritable.writeArray(out, context.getUInitial(), false);
+		DoubleArrayWritable.writeArray(out, context.getXInitial(), false);
+		DoubleArrayWritable.writeArray(out, context.getZInitial(), false);
 
 		new DoubleWritable(context.getRho()).write(out);
 		new DoubleWritable(context.getLambdaValue()).write(out);
@@ -3,20 +3,35 @@ package io.izenecloud.admm;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.mahout.common.HadoopUtil;
 import org.mortbay.log.Log;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static io.izenecloud.HDFSHelper.*;
+import static io.izenecloud.admm.AdmmIterationHelper.*;
 
 public class AdmmOptimizerDriver {
-	private static final int DEFAULT_ADMM_ITERATIONS_MAX = 2;
+	private static final int DEFAULT_ADMM_ITERATIONS_MAX = 50;
 	private static final float DEFAULT_REGULARIZATION_FACTOR = 0.000001f;
 	private static final String ITERATION_FOLDER_NAME = "iteration_";
+	private static final String SPLIT_CACHE_FOLDER_NAME = "SplitCache";
+	private static final int DEFAULT_NUM_REDUCERS = 1;
+	static final String HISTORY = "HISTORY";
 	public static final String FINAL_MODEL = "FINAL_MODEL";
+	public static final String LOCAL_ENGINE = "local";
 
 	public static int run(Path signalData, Path output,
 			Float regularizationFactor, Boolean addIntercept,
@@ -33,37 +48,67 @@ public class AdmmOptimizerDriver {
 		int thisIterationsMaximum = null == iterationsMaximum ? DEFAULT_ADMM_ITERATIONS_MAX
 				: iterationsMaximum;
 
+		if (LOCAL_ENGINE.equalsIgnoreCase(conf.get("admm.optimizer.engine"))) {
+			return AdmmLocalEngine.run(signalData, output,
+					thisRegularizationFactor, thisAddIntercept,
+					thisRegularizeIntercept, thisIterationsMaximum, conf);
+		}
+
 		int iterationNumber = 0;
 		boolean isFinalIteration = false;
 		conf.set("mapred.job.queue.name", "sf1");
 		conf.setInt("mapred.task.timeout", 6000000);
 		conf.setInt("mapred.job.map.memory.mb", 4096);
 		conf.setInt("mapred.job.reduce.memory.mb", 4096);
+		int numThreads = conf.getInt("admm.iteration.num.threads", 1);
+		if (numThreads > 1) {
+			conf.setInt("mapreduce.map.cpu.vcores", numThreads);
+		}
 
 		FileSystem fs = output.getFileSystem(conf);
 		HadoopUtil.delete(conf, output);
 
 		String intermediateHdfsBaseString = output.toString() + "/Iteration/";
+		Path splitCachePath = new Path(output, SPLIT_CACHE_FOLDER_NAME);
+		conf.set("admm.split.cache.location", splitCachePath.toString());
 
+		RhoUpdater rhoUpdater = newRhoUpdater(conf);
+		boolean inexact = conf.getBoolean("admm.lbfgs.inexact", false);
+		float toleranceMin = conf.getFloat("admm.lbfgs.tolerance.min",
+				AdmmConsensus.DEFAULT_INEXACT_TOLERANCE_MIN);
+		float toleranceMax = conf.getFloat("admm.lbfgs.tolerance.max",
+				AdmmConsensus.DEFAULT_INEXACT_TOLERANCE_MAX);
+		if (inexact) {
+			conf.setFloat("admm.lbfgs.tolerance", toleranceMax);
+		}
+		List<AdmmIterationStatus> history = new ArrayList<AdmmIterationStatus>();
 		while (!isFinalIteration) {
-			long preStatus = 0;
 			Path previousHdfsResultsPath = new Path(intermediateHdfsBaseString
 					+ ITERATION_FOLDER_NAME + (iterationNumber - 1));
 			Path currentHdfsResultsPath = new Path(intermediateHdfsBaseString
 					+ ITERATION_FOLDER_NAME + iterationNumber);
 
-			long curStatus = doAdmmIteration(conf, previousHdfsResultsPath,
-					currentHdfsResultsPath, signalData, iterationNumber,
-					thisAddIntercept, thisRegularizeIntercept,
-					thisRegularizationFactor);
-			Log.info("curStatus = {}", curStatus);
-			isFinalIteration = convergedOrMaxed(curStatus, preStatus,
-					iterationNumber, thisIterationsMaximum);
+			AdmmIterationStatus status = doAdmmIteration(conf,
+					previousHdfsResultsPath, currentHdfsResultsPath, signalData,
+					iterationNumber, thisAddIntercept, thisRegularizeIntercept,
+					thisRegularizationFactor, rhoUpdater);
+			history.add(status);
+			writeHistory(history, new Path(output, HISTORY), fs);
+			isFinalIteration = status.converged()
+					|| iterationNumber >= thisIterationsMaximum;
+			// the mappers of the next iteration rescale u to the new rho
+			conf.setFloat("admm.u.scale",
+					(float) (status.getRho() / status.getNextRho()));
+			if (inexact) {
+				conf.setFloat("admm.lbfgs.tolerance", (float) AdmmConsensus
+						.localTolerance(status, toleranceMin, toleranceMax));
+			}
 
 			if (isFinalIteration) {
 				Path finalOutput = new Path(output, FINAL_MODEL);
 				fs.delete(finalOutput, true);
 				fs.rename(new Path(currentHdfsResultsPath, "Z"), finalOutput);
+				fs.delete(splitCachePath, true);
 			}
 			iterationNumber++;
 		}
@@ -71,11 +116,12 @@ public class AdmmOptimizerDriver {
 		return 0;
 	}
 
-	public static long doAdmmIteration(Configuration baseConf,
+	public static AdmmIterationStatus doAdmmIteration(Configuration baseConf,
 			Path previousHdfsPath, Path currentHdfsPath,
 			Path signalDataLocation, int iterationNumber, boolean addIntercept,
-			boolean regularizeIntercept, float regularizationFactor)
-			throws IOException, ClassNotFoundException, InterruptedException {
+			boolean regularizeIntercept, float regularizationFactor,
+			RhoUpdater rhoUpdater) throws IOException, ClassNotFoundException,
+			InterruptedException {
 
 		Configuration conf = new Configuration(baseConf);
 		conf.set("previous.intermediate.output.location",
@@ -96,15 +142,18 @@ public class AdmmOptimizerDriver {
 		job.setInputFormatClass(AdmmIterationInputFormat.class);
 		job.setOutputFormatClass(AdmmIterationOutputFormat.class);
 
-		job.setMapOutputKeyClass(NullWritable.class);
+		job.setMapOutputKeyClass(IntWritable.class);
 		job.setMapOutputValueClass(AdmmReducerContextWritable.class);
-		job.setOutputKeyClass(NullWritable.class);
+		job.setOutputKeyClass(IntWritable.class);
 		job.setOutputValueClass(AdmmReducerContextWritable.class);
 
 		job.setMapperClass(AdmmIterationMapper.class);
-		// job.setCombinerClass(AdmmIterationCombiner.class);
+		job.setCombinerClass(AdmmIterationCombiner.class);
 		job.setReducerClass(AdmmIterationReducer.class);
-		// job.setNumReduceTasks(12);
+		// slice keys are 0 .. reducers - 1, the default hash partitioner
+		// sends slice i to reducer i
+		job.setNumReduceTasks(conf.getInt("admm.iteration.num.reducers",
+				DEFAULT_NUM_REDUCERS));
 
 		HadoopUtil.delete(conf, currentHdfsPath);
 		boolean succeeded = job.waitForCompletion(true);
@@ -112,13 +161,96 @@ public class AdmmOptimizerDriver {
 			throw new IllegalStateException("Job failed!");
 		}
 
-		return job.getCounters()
-				.findCounter(AdmmIterationReducer.IterationCounter.ITERATION)
-				.getValue();
+		return mergeConsensusSlices(conf, currentHdfsPath, iterationNumber,
+				rhoUpdater);
+	}
+
+	/**
+	 * Stitches the Z- slices of all reducers into the single Z of this
+	 * iteration, then judges the residuals against the absolute and relative
+	 * tolerances and updates rho on the whole vector.
+	 */
+	@SuppressWarnings("deprecation")
+	private static AdmmIterationStatus mergeConsensusSlices(
+			Configuration conf, Path currentHdfsPath, int iterationNumber,
+			RhoUpdater rhoUpdater) throws IOException {
+		FileSystem fs = currentHdfsPath.getFileSystem(conf);
+		Map<Integer, AdmmReducerContext> slices = new TreeMap<Integer, AdmmReducerContext>();
+		int n = 0;
+		for (Path file : getFilePaths(currentHdfsPath, "Z-*", fs)) {
+			SequenceFile.Reader reader = new SequenceFile.Reader(fs, file,
+					conf);
+			IntWritable key = new IntWritable();
+			AdmmReducerContextWritable value = new AdmmReducerContextWritable();
+			while (reader.next(key, value)) {
+				slices.put(key.get(), value.get());
+				n += value.get().getZUpdated().length;
+			}
+			reader.close();
+		}
+		if (slices.isEmpty()) {
+			throw new IllegalStateException("no consensus slices in "
+					+ currentHdfsPath);
+		}
+
+		double[] xAverage = new double[n];
+		double[] uAverage = new double[n];
+		double[] zUpdated = new double[n];
+		AdmmReducerContext first = slices.values().iterator().next();
+		double[] counts = null == first.getCounts() ? null : new double[n];
+		int offset = 0;
+		double xSquaredNorm = 0.0;
+		for (AdmmReducerContext slice : slices.values()) {
+			int length = slice.getZUpdated().length;
+			System.arraycopy(slice.getXUpdated(), 0, xAverage, offset, length);
+			System.arraycopy(slice.getUInitial(), 0, uAverage, offset, length);
+			System.arraycopy(slice.getZUpdated(), 0, zUpdated, offset, length);
+			if (null != counts) {
+				System.arraycopy(slice.getCounts(), 0, counts, offset, length);
+			}
+			xSquaredNorm += slice.getXSquaredNorm();
+			offset += length;
+		}
+		AdmmReducerContext consensus = new AdmmReducerContext(null, uAverage,
+				xAverage, zUpdated, first.getPrimalObjectiveValue(),
+				first.getRho(), first.getLambdaValue(), first.getCount(),
+				xSquaredNorm, counts);
+		double[] zPrevious = readPreviousZ(conf);
+		zPrevious = null == zPrevious ? new double[n] : Arrays.copyOf(
+				zPrevious, n);
+		// the mappers relaxed towards zPrevious, the residual is on the x
+		// before
+		double[] xResidual = AdmmConsensus.unrelax(xAverage, zPrevious, conf
+				.getFloat("admm.relaxation", AdmmConsensus.DEFAULT_RELAXATION));
+		AdmmIterationStatus status = AdmmIterationStatus.of(iterationNumber,
+				consensus, xResidual, zPrevious,
+				conf.getFloat("admm.l1.factor", 0.0f),
+				conf.getBoolean("regularize.intercept", false), conf.getFloat(
+						"admm.tolerance.absolute",
+						AdmmConsensus.DEFAULT_ABSOLUTE_TOLERANCE), conf
+						.getFloat("admm.tolerance.relative",
+								AdmmConsensus.DEFAULT_RELATIVE_TOLERANCE));
+		Log.info("iteration " + iterationNumber + ": objective = "
+				+ status.getObjective() + ", rNorm = " + status.getRNorm()
+				+ " (" + status.getEpsPrimal() + "), sNorm = "
+				+ status.getSNorm() + " (" + status.getEpsDual() + ")");
+
+		status.setNextRho(rhoUpdater.update(status, consensus, zPrevious));
+
+		writeAdmmReducerContext(new AdmmReducerContext(null, null, null,
+				zUpdated, 0.0, status.getNextRho(), first.getLambdaValue(), 0L),
+				new Path(currentHdfsPath, "Z"), fs, conf);
+		deleteFiles(currentHdfsPath, "Z-*", fs);
+
+		return status;
 	}
 
-	private static boolean convergedOrMaxed(long curStatus, long preStatus,
-			int iterationNumber, int iterationsMaximum) {
-		return curStatus <= preStatus || iterationNumber >= iterationsMaximum;
+	/**
+	 * The rho schedule named by admm.rho.updater, residual balancing by
+	 * default.
+	 */
+	static RhoUpdater newRhoUpdater(Configuration conf) {
+		return ReflectionUtils.newInstance(conf.getClass("admm.rho.updater",
+				ResidualBalancingRhoUpdater.class, RhoUpdater.class), conf);
 	}
 }
@@ -33,9 +33,31 @@ public class AdmmReducerContext {
 
 	private long count;
 
+	// sum of ||x_i||^2 over the count splits, for the primal residual
+	private double xSquaredNorm;
+
+	// sparse consensus: number of splits holding each coordinate, null when
+	// every split holds all of them
+	private double[] counts;
+
 	public AdmmReducerContext(String splitId, double[] uInitial,
 			double[] xUpdated, double[] zUpdated, double primalObjectiveValue,
 			double rho, double lambdaValue, long count) {
+		this(splitId, uInitial, xUpdated, zUpdated, primalObjectiveValue,
+				rho, lambdaValue, count, 0.0);
+	}
+
+	public AdmmReducerContext(String splitId, double[] uInitial,
+			double[] xUpdated, double[] zUpdated, double primalObjectiveValue,
+			double rho, double lambdaValue, long count, double xSquaredNorm) {
+		this(splitId, uInitial, xUpdated, zUpdated, primalObjectiveValue,
+				rho, lambdaValue, count, xSquaredNorm, null);
+	}
+
+	public AdmmReducerContext(String splitId, double[] uInitial,
+			double[] xUpdated, double[] zUpdated, double primalObjectiveValue,
+			double rho, double lambdaValue, long count, double xSquaredNorm,
+			double[] counts) {
 		this.splitId = splitId;
 		this.uInitial = uInitial;
 		this.xUpdated = xUpdated;
@@ -54,6 +76,8 @@ public class AdmmReducerContext {
 		this.rho = rho;
 		this.lambdaValue = lambdaValue;
 		this.count = count;
+		this.xSquaredNorm = xSquaredNorm;
+		this.counts = counts;
 	}
 
 	public AdmmReducerContext() {
@@ -68,6 +92,8 @@ public class AdmmReducerContext {
 		this.rho = context.rho;
 		this.lambdaValue = context.lambdaValue;
 		this.count = context.count;
+		this.xSquaredNorm = context.xSquaredNorm;
+		this.counts = context.counts;
 	}
 
 	public double[] getUInitial() {
@@ -101,4 +127,12 @@ public class AdmmReducerContext {
 	public long getCount() {
 		return count;
 	}
+
+	public double getXSquaredNorm() {
+		return xSquaredNorm;
+	}
+
+	public double[] getCounts() {
+		return counts;
+	}
 }
@@ -7,16 +7,26 @@ import org.apache.hadoop.io.Writable;
 
 import java.io.DataInput;
 import java.io.DataOutput;
+import java.io.EOFException;
 import java.io.IOException;
 
 public class AdmmReducerContextWritable implements Writable {
 	private AdmmReducerContext context;
-	private DoubleArrayWritable writer = new DoubleArrayWritable();
+	private boolean singlePrecision;
 
 	public AdmmReducerContextWritable(AdmmReducerContext context) {
 		this.context = context;
 	}
 
+	/**
+	 * With singlePrecision set the vectors are rounded to float on write.
+	 */
+	public AdmmReducerContextWritable(AdmmReducerContext context,
+			boolean singlePrecision) {
+		this.context = context;
+		this.singlePrecision = singlePrecision;
+	}
+
 	public AdmmReducerContextWritable() {
 	}
 
@@ -29,27 +39,21 @@ public class AdmmReducerContextWritable implements Writable {
 		flag.readFields(in);
 		double[] xUpdated = null;
 		if (flag.get()) {
-			DoubleArrayWritable reader = new DoubleArrayWritable();
-			reader.readFields(in);
-			xUpdated = reader.get();
+			xUpdated = DoubleArrayWritable.readArray(in, null);
 		}
 		flag.set(false);
 
 		double[] uInitial = null;
 		flag.readFields(in);
 		if (flag.get()) {
-			DoubleArrayWritable reader = new DoubleArrayWritable();
-			reader.readFields(in);
-			uInitial = reader.get();
+			uInitial = DoubleArrayWritable.readArray(in, null);
 		}
 		flag.set(false);
 
 		double[] zUpdated = null;
 		flag.readFields(in);
 		if (flag.get()) {
-			DoubleArrayWritable reader = new DoubleArrayWritable();
-			reader.readFields(in);
-			zUpdated = reader.get();
+			zUpdated = DoubleArrayWritable.readArray(in, null);
 		}
 		flag.set(false);
 
@@ -65,34 +69,52 @@ public class AdmmReducerContextWritable implements Writable {
 		LongWritable count = new LongWritable();
 		count.readFields(in);
 
+		DoubleWritable xSquaredNorm = new DoubleWritable(0.0);
+		double[] counts = null;
+		try {
+			xSquaredNorm.readFields(in);
+			flag.readFields(in);
+			if (flag.get()) {
+				counts = DoubleArrayWritable.readArray(in, null);
+			}
+		} catch (EOFException e) {
+			// written before the norm and the counts, as an old FINAL_MODEL
+		}
+
 		context = new AdmmReducerContext(null, uInitial, xUpdated, zUpdated,
 				primalObjectiveValue.get(), rho.get(), lambda.get(),
-				count.get());
+				count.get(), xSquaredNorm.get(), counts);
 	}
 
 	public void write(DataOutput out) throws IOException {
 		new BooleanWritable(null != context.getXUpdated()).write(out);
 		if (null != context.getXUpdated()) {
-			writer.set(context.getXUpdated());
-			writer.write(out);
+			DoubleArrayWritable.writeArray(out, context.getXUpdated(),
+					singlePrecision);
 		}
 
 		new BooleanWritable(null != context.getUInitial()).write(out);
 		if (null != context.getUInitial()) {
-			writer.set(context.getUInitial());
-			writer.write(out);
+			DoubleArrayWritable.writeArray(out, context.getUInitial(),
+					singlePrecision);
 		}
 
 		new BooleanWritable(null != context.getZUpdated()).write(out);
 		if (null != context.getZUpdated()) {
-			writer.set(context.getZUpdated());
-			writer.write(out);
+			DoubleArrayWritable.writeArray(out, context.getZUpdated(),
+					singlePrecision);
 		}
 
 		new DoubleWritable(context.getRho()).write(out);
 		new DoubleWritable(context.getLambdaValue()).write(out);
 		new DoubleWritable(context.getPrimalObjectiveValue()).write(out);
 		new LongWritable(context.getCount()).write(out);
+		new DoubleWritable(context.getXSquaredNorm()).write(out);
+
+		new BooleanWritable(null != context.getCounts()).write(out);
+		if (null != context.getCounts()) {
+			DoubleArrayWritable.writeArray(out, context.getCounts(), false);
+		}
 	}
 
 }
@@ -0,0 +1,50 @@
+package io.izenecloud.admm;
+
+import java.util.Arrays;
+
+/**
+ * Base class of objectives that compute value and gradient in a single pass
+ * over the training data. The result of the last evaluation is memoized, so
+ * a {@link #valueAt(double[])} followed by a {@link #derivativeAt(double[])}
+ * at the same point (as the line search of L-BFGS does) touches the data
+ * only once.
+ *
+ * The array returned by {@link #derivativeAt(double[])} is owned by this
+ * function and is overwritten by the next evaluation at a different point.
+ */
+public abstract class CachingDiffFunction implements
+		DifferentiableFunction {
+	private double[] lastX = null;
+	private double[] gradient = null;
+	private double value;
+
+	/**
+	 * Evaluates the objective at x, writing its gradient into the given
+	 * zero-filled array and returning its value.
+	 */
+	protected abstract double calculate(double[] x, double[] gradient);
+
+	public double valueAt(double[] x) {
+		ensure(x);
+		return value;
+	}
+
+	public double[] derivativeAt(double[] x) {
+		ensure(x);
+		return gradient;
+	}
+
+	private void ensure(double[] x) {
+		if (null != lastX && Arrays.equals(x, lastX)) {
+			return;
+		}
+		if (null == lastX || lastX.length != x.length) {
+			lastX = new double[x.length];
+			gradient = new double[x.length];
+		} else {
+			Arrays.fill(gradient, 0.0);
+		}
+		value = calculate(x, gradient);
+		System.arraycopy(x, 0, lastX, 0, x.length);
+	}
+}
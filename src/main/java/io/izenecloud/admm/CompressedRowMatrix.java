@@ -0,0 +1,200 @@
+package io.izenecloud.admm;
+
+import java.util.Arrays;
+
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.Vector.Element;
+
+/**
+ * Read-only training matrix of one input split in compressed sparse row
+ * layout. The non-zeroes of row i are stored in
+ * colIdx[rowPtr[i] .. rowPtr[i + 1]) and values[rowPtr[i] .. rowPtr[i + 1]),
+ * the label of row i is kept apart in labels[i].
+ */
+public class CompressedRowMatrix {
+	private final int numRows;
+	private final int numCols;
+	private final int[] rowPtr;
+	private final int[] colIdx;
+	private final double[] values;
+	private final double[] labels;
+
+	public CompressedRowMatrix(int numRows, int numCols, int[] rowPtr,
+			int[] colIdx, double[] values, double[] labels) {
+		this.numRows = numRows;
+		this.numCols = numCols;
+		this.rowPtr = rowPtr;
+		this.colIdx = colIdx;
+		this.values = values;
+		this.labels = labels;
+	}
+
+	public int numRows() {
+		return numRows;
+	}
+
+	public int numCols() {
+		return numCols;
+	}
+
+	public int numNonZeroes() {
+		return rowPtr[numRows];
+	}
+
+	public int[] getRowPtr() {
+		return rowPtr;
+	}
+
+	public int[] getColIdx() {
+		return colIdx;
+	}
+
+	public double[] getValues() {
+		return values;
+	}
+
+	public double[] getLabels() {
+		return labels;
+	}
+
+	/**
+	 * Returns the sorted columns holding at least one non-zero.
+	 */
+	public int[] activeColumns() {
+		boolean[] active = new boolean[numCols];
+		int numActive = 0;
+		for (int k = 0; k < numNonZeroes(); k++) {
+			if (!active[colIdx[k]]) {
+				active[colIdx[k]] = true;
+				numActive++;
+			}
+		}
+		int[] columns = new int[numActive];
+		for (int col = 0, i = 0; col < numCols; col++) {
+			if (active[col]) {
+				columns[i++] = col;
+			}
+		}
+		return columns;
+	}
+
+	/**
+	 * Returns this matrix restricted to the given sorted columns, which must
+	 * cover all non-zeroes; column columns[j] becomes column j.
+	 */
+	public CompressedRowMatrix compact(int[] columns) {
+		int[] local = new int[numCols];
+		Arrays.fill(local, -1);
+		for (int j = 0; j < columns.length; j++) {
+			local[columns[j]] = j;
+		}
+		int[] compactColIdx = new int[numNonZeroes()];
+		for (int k = 0; k < compactColIdx.length; k++) {
+			compactColIdx[k] = local[colIdx[k]];
+			if (compactColIdx[k] < 0) {
+				throw new IllegalArgumentException("column " + colIdx[k]
+						+ " is not among the compacted columns");
+			}
+		}
+		return new CompressedRowMatrix(numRows, columns.length, rowPtr,
+				compactColIdx, values, labels);
+	}
+
+	/**
+	 * Packs training rows as they arrive from the record reader. Each row is
+	 * a {@link Vector} whose last entry is the label, all other entries are
+	 * features.
+	 */
+	public static class Builder {
+		private static final int INITIAL_ROWS = 1024;
+		private static final int INITIAL_NON_ZEROES = 16 * INITIAL_ROWS;
+
+		private final boolean addIntercept;
+		private int numRows;
+		private int numCols;
+		private int numNonZeroes;
+		private int[] rowPtr;
+		private int[] colIdx;
+		private double[] values;
+		private double[] labels;
+
+		public Builder(boolean addIntercept) {
+			this.addIntercept = addIntercept;
+			numRows = 0;
+			numCols = -1;
+			numNonZeroes = 0;
+			rowPtr = new int[INITIAL_ROWS + 1];
+			colIdx = new int[INITIAL_NON_ZEROES];
+			values = new double[INITIAL_NON_ZEROES];
+			labels = new double[INITIAL_ROWS];
+		}
+
+		public int numRows() {
+			return numRows;
+		}
+
+		public int numCols() {
+			return numCols;
+		}
+
+		public void append(Vector row) {
+			int labelIndex = row.size() - 1;
+			if (numCols < 0) {
+				numCols = labelIndex;
+			} else if (numCols != labelIndex) {
+				throw new IllegalArgumentException("row dimension "
+						+ labelIndex + " does not match split dimension "
+						+ numCols);
+			}
+			ensureRowCapacity(numRows + 1);
+			ensureNonZeroCapacity(numNonZeroes
+					+ row.getNumNondefaultElements() + 1);
+
+			double label = 0.0;
+			if (addIntercept) {
+				colIdx[numNonZeroes] = 0;
+				values[numNonZeroes] = 1.0;
+				numNonZeroes++;
+			}
+			for (Element e : row.nonZeroes()) {
+				int index = e.index();
+				if (index == labelIndex) {
+					label = e.get();
+				} else if (!(addIntercept && 0 == index) && 0.0 != e.get()) {
+					colIdx[numNonZeroes] = index;
+					values[numNonZeroes] = e.get();
+					numNonZeroes++;
+				}
+			}
+			labels[numRows] = label;
+			numRows++;
+			rowPtr[numRows] = numNonZeroes;
+		}
+
+		public CompressedRowMatrix build() {
+			return new CompressedRowMatrix(numRows, Math.max(numCols, 0),
+					Arrays.copyOf(rowPtr, numRows + 1), Arrays.copyOf(colIdx,
+							numNonZeroes),
+					Arrays.copyOf(values, numNonZeroes), Arrays.copyOf(labels,
+							numRows));
+		}
+
+		private void ensureRowCapacity(int rows) {
+			if (rows <= labels.length) {
+				return;
+			}
+			int capacity = Math.max(rows, labels.length * 2);
+			rowPtr = Arrays.copyOf(rowPtr, capacity + 1);
+			labels = Arrays.copyOf(labels, capacity);
+		}
+
+		private void ensureNonZeroCapacity(int nonZeroes) {
+			if (nonZeroes <= values.length) {
+				return;
+			}
+			int capacity = Math.max(nonZeroes, values.length * 2);
+			colIdx = Arrays.copyOf(colIdx, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+	}
+}
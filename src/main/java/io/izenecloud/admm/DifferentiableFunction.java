@@ -0,0 +1,16 @@
+package io.izenecloud.admm;
+
+/**
+ * A smooth objective as minimized by {@link Lbfgs}.
+ */
+public interface DifferentiableFunction {
+	int domainDimension();
+
+	double valueAt(double[] x);
+
+	/**
+	 * The gradient at x. The returned array may be owned by the function
+	 * and only stay valid until the next evaluation.
+	 */
+	double[] derivativeAt(double[] x);
+}
@@ -3,16 +3,28 @@ package io.izenecloud.admm;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
-import org.apache.hadoop.io.ArrayWritable;
-import org.apache.hadoop.io.DoubleWritable;
 import org.apache.hadoop.io.Writable;
 
+/**
+ * A double[] written as an int length followed by the elements as one raw
+ * big-endian block, the same bytes an ArrayWritable of DoubleWritable
+ * produces, so files written before stay readable.
+ *
+ * Arrays that are mostly zeroes are written as (index, value) pairs, and
+ * with singlePrecision set the values are written as floats. Both variants
+ * are announced by a negative length marker in place of the length.
+ */
 public class DoubleArrayWritable implements Writable {
-	private static final ArrayWritable writer = new ArrayWritable(
-			DoubleWritable.class);
+	private static final int SPARSE_DOUBLE = -1;
+	private static final int DENSE_FLOAT = -2;
+	private static final int SPARSE_FLOAT = -3;
+	private static final int BLOCK_SIZE = 1 << 16;
 
 	private double[] arr;
+	private boolean singlePrecision;
 
 	public DoubleArrayWritable() {
 	}
@@ -21,35 +33,169 @@ public class DoubleArrayWritable implements Writable {
 		this.arr = arr;
 	}
 
+	/**
+	 * With singlePrecision set the values are rounded to float on write,
+	 * halving their size.
+	 */
+	public DoubleArrayWritable(double[] arr, boolean singlePrecision) {
+		this.arr = arr;
+		this.singlePrecision = singlePrecision;
+	}
+
 	public void set(double[] arr) {
 		this.arr = arr;
 	}
 
 	public void write(DataOutput out) throws IOException {
-		Writable[] arr = new DoubleWritable[this.arr.length];
-		for (int i = 0; i < this.arr.length; i++) {
-			arr[i] = new DoubleWritable(this.arr[i]);
-		}
-		writer.set(arr);
-		writer.write(out);
+		writeArray(out, this.arr, this.singlePrecision);
 	}
 
 	public void readFields(DataInput in) throws IOException {
-		writer.readFields(in);
-		Writable[] arr = writer.get();
-		if (null == this.arr) {
-			this.arr = new double[arr.length];
-		} else if (this.arr.length != arr.length) {
-			this.arr = null;
-			this.arr = new double[arr.length];
+		this.arr = readArray(in, this.arr);
+	}
+
+	public double[] get() {
+		return arr;
+	}
+
+	public static void writeArray(DataOutput out, double[] arr,
+			boolean singlePrecision) throws IOException {
+		int nonZeroes = 0;
+		for (int i = 0; i < arr.length; i++) {
+			if (0.0 != arr[i]) {
+				nonZeroes++;
+			}
 		}
-		for (int i = 0; i < this.arr.length; i++) {
-			this.arr[i] = ((DoubleWritable) arr[i]).get();
+		int valueSize = singlePrecision ? 4 : 8;
+		// a sparse entry costs an int index on top of its value
+		boolean sparse = (long) nonZeroes * (4 + valueSize) + 4 < (long) arr.length
+				* valueSize;
+
+		byte[] block = newBlock(arr.length);
+		if (sparse) {
+			out.writeInt(singlePrecision ? SPARSE_FLOAT : SPARSE_DOUBLE);
+			out.writeInt(arr.length);
+			out.writeInt(nonZeroes);
+			int[] indices = new int[nonZeroes];
+			double[] values = new double[nonZeroes];
+			for (int i = 0, k = 0; i < arr.length; i++) {
+				if (0.0 != arr[i]) {
+					indices[k] = i;
+					values[k] = arr[i];
+					k++;
+				}
+			}
+			writeInts(out, indices, block);
+			writeValues(out, values, singlePrecision, block);
+		} else {
+			if (singlePrecision) {
+				out.writeInt(DENSE_FLOAT);
+			}
+			out.writeInt(arr.length);
+			writeValues(out, arr, singlePrecision, block);
 		}
 	}
 
-	public double[] get() {
+	/**
+	 * Reads an array in any of the encodings, reusing the given array when
+	 * it has the right length.
+	 */
+	public static double[] readArray(DataInput in, double[] reuse)
+			throws IOException {
+		int marker = in.readInt();
+		boolean singlePrecision = DENSE_FLOAT == marker
+				|| SPARSE_FLOAT == marker;
+		boolean sparse = SPARSE_DOUBLE == marker || SPARSE_FLOAT == marker;
+		int length = marker < 0 ? in.readInt() : marker;
+
+		double[] arr = null != reuse && reuse.length == length ? reuse
+				: new double[length];
+		byte[] block = newBlock(length);
+		if (sparse) {
+			int nonZeroes = in.readInt();
+			int[] indices = new int[nonZeroes];
+			double[] values = new double[nonZeroes];
+			readInts(in, indices, block);
+			readValues(in, values, singlePrecision, block);
+			if (arr == reuse) {
+				Arrays.fill(arr, 0.0);
+			}
+			for (int k = 0; k < nonZeroes; k++) {
+				arr[indices[k]] = values[k];
+			}
+		} else {
+			readValues(in, arr, singlePrecision, block);
+		}
 		return arr;
 	}
 
+	private static byte[] newBlock(int length) {
+		return new byte[(int) Math.min(BLOCK_SIZE, Math.max(8L, 8L * length))];
+	}
+
+	private static void writeInts(DataOutput out, int[] src, byte[] block)
+			throws IOException {
+		int step = block.length / 4;
+		for (int off = 0; off < src.length; off += step) {
+			int n = Math.min(step, src.length - off);
+			ByteBuffer.wrap(block).asIntBuffer().put(src, off, n);
+			out.write(block, 0, n * 4);
+		}
+	}
+
+	private static void readInts(DataInput in, int[] dst, byte[] block)
+			throws IOException {
+		int step = block.length / 4;
+		for (int off = 0; off < dst.length; off += step) {
+			int n = Math.min(step, dst.length - off);
+			in.readFully(block, 0, n * 4);
+			ByteBuffer.wrap(block).asIntBuffer().get(dst, off, n);
+		}
+	}
+
+	private static void writeValues(DataOutput out, double[] src,
+			boolean singlePrecision, byte[] block) throws IOException {
+		if (singlePrecision) {
+			int step = block.length / 4;
+			float[] floats = new float[Math.min(step, src.length)];
+			for (int off = 0; off < src.length; off += step) {
+				int n = Math.min(step, src.length - off);
+				for (int i = 0; i < n; i++) {
+					floats[i] = (float) src[off + i];
+				}
+				ByteBuffer.wrap(block).asFloatBuffer().put(floats, 0, n);
+				out.write(block, 0, n * 4);
+			}
+		} else {
+			int step = block.length / 8;
+			for (int off = 0; off < src.length; off += step) {
+				int n = Math.min(step, src.length - off);
+				ByteBuffer.wrap(block).asDoubleBuffer().put(src, off, n);
+				out.write(block, 0, n * 8);
+			}
+		}
+	}
+
+	private static void readValues(DataInput in, double[] dst,
+			boolean singlePrecision, byte[] block) throws IOException {
+		if (singlePrecision) {
+			int step = block.length / 4;
+			float[] floats = new float[Math.min(step, dst.length)];
+			for (int off = 0; off < dst.length; off += step) {
+				int n = Math.min(step, dst.length - off);
+				in.readFully(block, 0, n * 4);
+				ByteBuffer.wrap(block).asFloatBuffer().get(floats, 0, n);
+				for (int i = 0; i < n; i++) {
+					dst[off + i] = floats[i];
+				}
+			}
+		} else {
+			int step = block.length / 8;
+			for (int off = 0; off < dst.length; off += step) {
+				int n = Math.min(step, dst.length - off);
+				in.readFully(block, 0, n * 8);
+				ByteBuffer.wrap(block).asDoubleBuffer().get(dst, off, n);
+			}
+		}
+	}
 }
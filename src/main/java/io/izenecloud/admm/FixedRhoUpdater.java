@@ -0,0 +1,12 @@
+package io.izenecloud.admm;
+
+/**
+ * Keeps rho at its initial value, the baseline the adaptive rules are
+ * measured against.
+ */
+public class FixedRhoUpdater implements RhoUpdater {
+	public double update(AdmmIterationStatus status,
+			AdmmReducerContext consensus, double[] zPrevious) {
+		return consensus.getRho();
+	}
+}
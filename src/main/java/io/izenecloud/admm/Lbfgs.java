@@ -0,0 +1,338 @@
+package io.izenecloud.admm;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limited memory BFGS minimizer, extended to OWL-QN when an l1 weight is
+ * set. All work arrays, including the ring buffers of the last s/y pairs,
+ * are allocated once per dimension and reused by every call, so a
+ * minimization allocates nothing but its result.
+ *
+ * With keepHistory set, the curvature pairs of one call seed the next one,
+ * which pays off when a sequence of closely related problems is solved,
+ * as in the rounds of ADMM. An instance is not thread safe.
+ */
+public class Lbfgs {
+	private static final Logger LOG = LoggerFactory.getLogger(Lbfgs.class);
+
+	public enum LineSearch {
+		/** Armijo backtracking, halving the step. */
+		BACKTRACKING,
+		/** Bisection for the weak Wolfe conditions; without l1 only. */
+		WOLFE
+	}
+
+	public static final int DEFAULT_MEMORY = 10;
+	private static final double ARMIJO = 1e-4;
+	private static final double CURVATURE = 0.9;
+	private static final int MAX_LINE_SEARCH_STEPS = 50;
+	// the relative decrease is measured over this many iterations
+	private static final int PERIOD = 5;
+	private static final double MIN_CURVATURE = 1e-16;
+
+	private final int memory;
+	private LineSearch lineSearch = LineSearch.BACKTRACKING;
+	private double l1;
+	private boolean keepHistory;
+
+	private int n = -1;
+	private double[][] s;
+	private double[][] y;
+	private double[] rho;
+	private double[] alpha;
+	private int newest;
+	private int size;
+
+	private double[] x;
+	private double[] g;
+	private double[] pg;
+	private double[] d;
+	private double[] xNew;
+	private double[] gNew;
+	private final double[] past = new double[PERIOD];
+
+	private double value;
+	private double valueNew;
+	private int evaluations;
+
+	public Lbfgs() {
+		this(DEFAULT_MEMORY);
+	}
+
+	/**
+	 * @param memory
+	 *            number of s/y pairs kept
+	 */
+	public Lbfgs(int memory) {
+		if (memory < 1) {
+			throw new IllegalArgumentException("memory = " + memory);
+		}
+		this.memory = memory;
+	}
+
+	public void setLineSearch(LineSearch lineSearch) {
+		this.lineSearch = lineSearch;
+	}
+
+	/**
+	 * Adds l1 * ||x||_1 to the objective, minimized by OWL-QN.
+	 */
+	public void setL1(double l1) {
+		this.l1 = l1;
+	}
+
+	public void setKeepHistory(boolean keepHistory) {
+		this.keepHistory = keepHistory;
+	}
+
+	public void clearHistory() {
+		size = 0;
+	}
+
+	/**
+	 * Number of function evaluations of the last minimization.
+	 */
+	public int getEvaluations() {
+		return evaluations;
+	}
+
+	public double[] minimize(DifferentiableFunction f, double tolerance,
+			double[] initial) {
+		return minimize(f, tolerance, initial, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Minimizes f from initial until the objective decreased by less than
+	 * tolerance, relative to its magnitude, over the last few iterations,
+	 * the (pseudo) gradient is negligible, or maxIterations iterations were
+	 * done. Returns a new array.
+	 */
+	public double[] minimize(DifferentiableFunction f, double tolerance,
+			double[] initial, int maxIterations) {
+		allocate(initial.length);
+		if (!keepHistory) {
+			size = 0;
+		}
+		evaluations = 0;
+		System.arraycopy(initial, 0, x, 0, n);
+		value = evaluate(f, x, g);
+
+		for (int k = 0; k < maxIterations; k++) {
+			pseudoGradient();
+			if (norm(pg) <= tolerance * Math.max(1.0, norm(x))) {
+				break;
+			}
+			direction();
+			double descent = dot(d, pg);
+			if (descent >= 0) {
+				// the history no longer describes f, start over
+				size = 0;
+				direction();
+				descent = dot(d, pg);
+			}
+			double step = 0 == size ? 1.0 / norm(pg) : 1.0;
+			boolean found = LineSearch.WOLFE == lineSearch && 0 == l1 ? wolfe(
+					f, step, descent) : backtrack(f, step);
+			if (!found) {
+				LOG.debug("line search failed after {} evaluations",
+						evaluations);
+				break;
+			}
+
+			push();
+			past[k % PERIOD] = value;
+			double[] t = x;
+			x = xNew;
+			xNew = t;
+			t = g;
+			g = gNew;
+			gNew = t;
+			double previous = past[(k + 1) % PERIOD];
+			value = valueNew;
+			if (k + 1 >= PERIOD
+					&& previous - value <= tolerance
+							* Math.max(1.0, Math.abs(value))) {
+				break;
+			}
+		}
+		return Arrays.copyOf(x, n);
+	}
+
+	private void allocate(int dimension) {
+		if (dimension == n) {
+			return;
+		}
+		n = dimension;
+		s = new double[memory][n];
+		y = new double[memory][n];
+		rho = new double[memory];
+		alpha = new double[memory];
+		size = 0;
+		x = new double[n];
+		g = new double[n];
+		pg = new double[n];
+		d = new double[n];
+		xNew = new double[n];
+		gNew = new double[n];
+	}
+
+	private double evaluate(DifferentiableFunction f, double[] point,
+			double[] gradient) {
+		evaluations++;
+		double result = f.valueAt(point);
+		System.arraycopy(f.derivativeAt(point), 0, gradient, 0, n);
+		if (0 != l1) {
+			for (int i = 0; i < n; i++) {
+				result += l1 * Math.abs(point[i]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The gradient, or with l1 the steepest descent direction of the non
+	 * smooth objective negated.
+	 */
+	private void pseudoGradient() {
+		if (0 == l1) {
+			System.arraycopy(g, 0, pg, 0, n);
+			return;
+		}
+		for (int i = 0; i < n; i++) {
+			if (x[i] > 0) {
+				pg[i] = g[i] + l1;
+			} else if (x[i] < 0) {
+				pg[i] = g[i] - l1;
+			} else if (g[i] + l1 < 0) {
+				pg[i] = g[i] + l1;
+			} else if (g[i] - l1 > 0) {
+				pg[i] = g[i] - l1;
+			} else {
+				pg[i] = 0.0;
+			}
+		}
+	}
+
+	/**
+	 * d = -H pg by the two loop recursion over the kept pairs; with l1 the
+	 * components leaving the orthant of -pg are dropped.
+	 */
+	private void direction() {
+		for (int i = 0; i < n; i++) {
+			d[i] = -pg[i];
+		}
+		int slot = newest;
+		for (int j = 0; j < size; j++) {
+			alpha[slot] = rho[slot] * dot(s[slot], d);
+			axpy(-alpha[slot], y[slot], d);
+			slot = (slot + memory - 1) % memory;
+		}
+		if (size > 0) {
+			double yy = dot(y[newest], y[newest]);
+			double gamma = 1.0 / (rho[newest] * yy);
+			for (int i = 0; i < n; i++) {
+				d[i] *= gamma;
+			}
+		}
+		for (int j = 0; j < size; j++) {
+			slot = (slot + 1) % memory;
+			double beta = rho[slot] * dot(y[slot], d);
+			axpy(alpha[slot] - beta, s[slot], d);
+		}
+		if (0 != l1) {
+			for (int i = 0; i < n; i++) {
+				if (d[i] * pg[i] >= 0) {
+					d[i] = 0.0;
+				}
+			}
+		}
+	}
+
+	private boolean backtrack(DifferentiableFunction f, double step) {
+		for (int j = 0; j < MAX_LINE_SEARCH_STEPS; j++, step /= 2) {
+			for (int i = 0; i < n; i++) {
+				xNew[i] = x[i] + step * d[i];
+				// OWL-QN keeps the step within the orthant of x
+				if (0 != l1) {
+					double orthant = 0 != x[i] ? x[i] : -pg[i];
+					if (xNew[i] * orthant <= 0) {
+						xNew[i] = 0.0;
+					}
+				}
+			}
+			valueNew = evaluate(f, xNew, gNew);
+			double decrease = 0.0;
+			for (int i = 0; i < n; i++) {
+				decrease += pg[i] * (xNew[i] - x[i]);
+			}
+			if (valueNew <= value + ARMIJO * decrease) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean wolfe(DifferentiableFunction f, double step,
+			double descent) {
+		double low = 0.0;
+		double high = Double.POSITIVE_INFINITY;
+		for (int j = 0; j < MAX_LINE_SEARCH_STEPS; j++) {
+			for (int i = 0; i < n; i++) {
+				xNew[i] = x[i] + step * d[i];
+			}
+			valueNew = evaluate(f, xNew, gNew);
+			if (valueNew > value + ARMIJO * step * descent) {
+				high = step;
+			} else if (dot(gNew, d) < CURVATURE * descent) {
+				low = step;
+			} else {
+				return true;
+			}
+			step = Double.isInfinite(high) ? 2 * low : (low + high) / 2;
+		}
+		return false;
+	}
+
+	/**
+	 * Records s = xNew - x and y = gNew - g unless the curvature along s is
+	 * not positive.
+	 */
+	private void push() {
+		int slot = (newest + 1) % memory;
+		double sy = 0.0;
+		for (int i = 0; i < n; i++) {
+			s[slot][i] = xNew[i] - x[i];
+			y[slot][i] = gNew[i] - g[i];
+			sy += s[slot][i] * y[slot][i];
+		}
+		if (sy <= MIN_CURVATURE) {
+			// the slot held the oldest pair when the buffer was full
+			size = Math.min(size, memory - 1);
+			return;
+		}
+		rho[slot] = 1.0 / sy;
+		newest = slot;
+		size = Math.min(size + 1, memory);
+	}
+
+	private double dot(double[] a, double[] b) {
+		double result = 0.0;
+		for (int i = 0; i < n; i++) {
+			result += a[i] * b[i];
+		}
+		return result;
+	}
+
+	private double norm(double[] a) {
+		return Math.sqrt(dot(a, a));
+	}
+
+	private void axpy(double factor, double[] a, double[] b) {
+		for (int i = 0; i < n; i++) {
+			b[i] += factor * a[i];
+		}
+	}
+}
@@ -1,103 +1,231 @@
 package io.izenecloud.admm;
 
-import org.apache.mahout.math.Vector;
-import org.apache.mahout.math.Vector.Element;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import edu.stanford.nlp.optimization.DiffFunction;
-
 
-public class LogisticL2DiffFunction implements DiffFunction {
+public class LogisticL2DiffFunction extends CachingDiffFunction {
 	private static final Logger LOG = LoggerFactory
 			.getLogger(LogisticL2DiffFunction.class.getName());
-	private Vector[] a; // m by n matrix of features
+	// m by n matrix of features, packed row by row
+	private final int[] rowPtr;
+	private final int[] colIdx;
+	private final double[] values;
 	private double[] b; // m by 1 vector of labels
 	private double[] u;
 	private double[] z;
-	// private Vector nonZeros;
 	private double rho;
 	private int m; // number of samples
 	private int n; // number of features (assumed that feature 0 is the
 					// intercept)
 
-	public LogisticL2DiffFunction(Vector[] a, double[] b, double rho,
+	// parallel mode, rows are sharded into contiguous blocks of roughly equal
+	// non-zeroes, every shard owns its gradient buffer
+	private final ExecutorService executor;
+	private final int numShards;
+	private int[] shardStart;
+	private double[][] shardGradient;
+	private double[] shardLoss;
+	private List<Callable<Void>> shardTasks;
+	private List<List<Callable<Void>>> mergeRounds;
+	private double[] currentX;
+
+	public LogisticL2DiffFunction(CompressedRowMatrix a, double rho,
 			double[] u, double[] z) {
+		this(a, rho, u, z, null, 1);
+	}
+
+	/**
+	 * Evaluates the objective with numShards tasks on the given executor.
+	 * Falls back to a serial evaluation when executor is null or numShards
+	 * is not greater than 1.
+	 */
+	public LogisticL2DiffFunction(CompressedRowMatrix a, double rho,
+			double[] u, double[] z, ExecutorService executor, int numShards) {
 		LOG.info("Initialize LogisticL2DiffFunction");
-		this.a = a;
-		this.b = b;
+		this.rowPtr = a.getRowPtr();
+		this.colIdx = a.getColIdx();
+		this.values = a.getValues();
+		this.b = a.getLabels();
 		this.rho = rho;
-		this.m = a.length;
-		if (this.m > 0) {
-			this.n = this.a[0].size() - 1;
-		} else {
-			this.n = 0;
-		}
-
-//		Long bytes = (long) 0;
-//		for (int row = 0; row < this.m; row++) {
-//			Vector v = this.a[row];
-//			for (Element e : v.nonZeroes()) {
-//				bytes += Integer.SIZE + Double.SIZE;
-//			}
-//		}
-//		LOG.info("Bytes {} reside on this map.", bytes);
+		this.m = a.numRows();
+		this.n = a.numCols();
+		LOG.info("Bytes {} reside on this map.", (long) a.numNonZeroes()
+				* (Integer.SIZE + Double.SIZE) / Byte.SIZE);
 
 		this.u = u;
 		this.z = z;
-		LOG.info("Initialize LogisticL2DiffFunction Finish");
+
+		this.numShards = Math.max(1, Math.min(numShards, this.m));
+		this.executor = this.numShards > 1 ? executor : null;
+		if (null != this.executor) {
+			initShards();
+		}
+		LOG.info("Initialize LogisticL2DiffFunction Finish, shards = {}",
+				null == this.executor ? 1 : this.numShards);
 
 	}
 
-	public double[] derivativeAt(double[] x) {
-		long sTime = System.nanoTime();
-		double[] out = new double[x.length];
-		for (int vectorIndex = 0; vectorIndex < x.length; vectorIndex++) {
-			out[vectorIndex] = 0.0; // reset result values to 0.0
+	private void initShards() {
+		shardStart = new int[numShards + 1];
+		long nnz = rowPtr[m];
+		int row = 0;
+		for (int shard = 1; shard < numShards; shard++) {
+			long target = nnz * shard / numShards;
+			row = Math.max(row, shardStart[shard - 1] + 1);
+			while (row < m - (numShards - shard) && rowPtr[row] < target) {
+				row++;
+			}
+			shardStart[shard] = row;
 		}
+		shardStart[numShards] = m;
 
-		for (int row = 0; row < this.m; row++) {
-			Vector v = this.a[row];
+		shardGradient = new double[numShards][n];
+		shardLoss = new double[numShards];
+		shardTasks = new ArrayList<Callable<Void>>(numShards);
+		for (int shard = 0; shard < numShards; shard++) {
+			shardTasks.add(new ShardTask(shard));
+		}
+		// pairwise tree reduction of the shard gradients
+		mergeRounds = new ArrayList<List<Callable<Void>>>();
+		for (int stride = 1; stride < numShards; stride *= 2) {
+			List<Callable<Void>> round = new ArrayList<Callable<Void>>();
+			for (int shard = 0; shard + stride < numShards; shard += 2 * stride) {
+				round.add(new MergeTask(shard, shard + stride));
+			}
+			mergeRounds.add(round);
+		}
+	}
+
+	private class ShardTask implements Callable<Void> {
+		private final int shard;
+
+		ShardTask(int shard) {
+			this.shard = shard;
+		}
+
+		public Void call() {
+			double[] gradient = shardGradient[shard];
+			Arrays.fill(gradient, 0.0);
+			shardLoss[shard] = accumulate(currentX, shardStart[shard],
+					shardStart[shard + 1], gradient);
+			return null;
+		}
+	}
+
+	private class MergeTask implements Callable<Void> {
+		private final int to;
+		private final int from;
+
+		MergeTask(int to, int from) {
+			this.to = to;
+			this.from = from;
+		}
+
+		public Void call() {
+			double[] dst = shardGradient[to];
+			double[] src = shardGradient[from];
+			for (int i = 0; i < dst.length; i++) {
+				dst[i] += src[i];
+			}
+			shardLoss[to] += shardLoss[from];
+			return null;
+		}
+	}
+
+	/**
+	 * Adds the loss gradient of rows [fromRow, toRow) into out and returns
+	 * their summed loss, neither is divided by the number of samples.
+	 */
+	private double accumulate(double[] x, int fromRow, int toRow,
+			double[] out) {
+		double loss = 0.0;
+		for (int row = fromRow; row < toRow; row++) {
+			int end = rowPtr[row + 1];
 			double ax = 0.0;
-			for (Element e : v.nonZeroes()) {
-				ax += e.get() * x[e.index()];
+			for (int k = rowPtr[row]; k < end; k++) {
+				ax += values[k] * x[colIdx[k]];
 			}
-			double thisRowMultiplier = this.b[row]
-					/ (1.0 + Math.exp(this.b[row] * ax));
-			for (Element e : v.nonZeroes()) {
-				out[e.index()] += -e.get() * thisRowMultiplier;
+			double expAxb = Math.exp(this.b[row] * ax);
+			loss += Math.log(1.0 + 1.0 / expAxb);
+			double thisRowMultiplier = this.b[row] / (1.0 + expAxb);
+			for (int k = rowPtr[row]; k < end; k++) {
+				out[colIdx[k]] -= values[k] * thisRowMultiplier;
 			}
 		}
-		for (int vectorIndex = 0; vectorIndex < x.length; vectorIndex++) {
-			out[vectorIndex] /= this.m;
+		return loss;
+	}
+
+	private double accumulateInParallel(double[] x, double[] out) {
+		currentX = x;
+		try {
+			invokeAll(shardTasks);
+			for (List<Callable<Void>> round : mergeRounds) {
+				invokeAll(round);
+			}
+		} finally {
+			currentX = null;
 		}
-		for (int vectorIndex = 0; vectorIndex < x.length; vectorIndex++) {
-			out[vectorIndex] += this.rho
-					* (x[vectorIndex] - this.z[vectorIndex] + this.u[vectorIndex]);
+		System.arraycopy(shardGradient[0], 0, out, 0, out.length);
+		return shardLoss[0];
+	}
+
+	private void invokeAll(List<Callable<Void>> tasks) {
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
 		}
-		LOG.info("Time for Evalute Gradient: = {}", System.nanoTime() - sTime);
-		return out;
 	}
 
-	public double valueAt(double[] x) {
-		return evaluate(x);
+	protected double calculate(double[] x, double[] out) {
+		long sTime = System.nanoTime();
+		double loss;
+		if (null == executor) {
+			loss = accumulate(x, 0, this.m, out);
+		} else {
+			loss = accumulateInParallel(x, out);
+		}
+		loss /= this.m;
+
+		double xzuNorm = 0.0;
+		for (int vectorIndex = 0; vectorIndex < x.length; vectorIndex++) {
+			double xzu = x[vectorIndex] - this.z[vectorIndex]
+					+ this.u[vectorIndex];
+			out[vectorIndex] /= this.m;
+			out[vectorIndex] += this.rho * xzu;
+			xzuNorm += xzu * xzu;
+		}
+		LOG.debug("Time for Evalute Gradient: = {}", System.nanoTime() - sTime);
+		return loss + xzuNorm * this.rho / 2.0;
 	}
 
 	public double evaluate(double[] x) {
-		double result = evaluatePrimalObjective(x);
-		result += evaluateObjectiveDualPenalty(x);
-		return result;
+		return valueAt(x);
 	}
 
 	public double evaluatePrimalObjective(double[] x) {
 		double result = 0.0;
 		for (int row = 0; row < this.m; row++) {
-			Vector v = this.a[row];
+			int end = rowPtr[row + 1];
 			double ax = 0;
-			for (Element e : v.nonZeroes()) {
+			for (int k = rowPtr[row]; k < end; k++) {
 				// Calculate dot product: ai'*x, where i ai denotes the ith row
 				// of a
-				ax += e.get() * x[e.index()];
+				ax += values[k] * x[colIdx[k]];
 			}
 			double axb = ax * b[row];
 			double thisLoopResult = Math.log(1.0 + Math.exp(-axb));
@@ -110,8 +238,8 @@ public class LogisticL2DiffFunction implements DiffFunction {
 	public double evaluateObjectiveDualPenalty(double[] x) {
 		double xzuNorm = 0.0;
 		for (int vectorIndex = 0; vectorIndex < x.length; vectorIndex++) {
-			xzuNorm += Math.pow(x[vectorIndex] - z[vectorIndex]
-					+ u[vectorIndex], 2.0);
+			double xzu = x[vectorIndex] - z[vectorIndex] + u[vectorIndex];
+			xzuNorm += xzu * xzu;
 		}
 		double xzuNormScaled = xzuNorm * this.rho / 2.0;
 		return xzuNormScaled;
@@ -120,4 +248,4 @@ public class LogisticL2DiffFunction implements DiffFunction {
 	public int domainDimension() {
 		return n;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,47 @@
+package io.izenecloud.admm;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+
+/**
+ * Residual balancing: multiplies rho by tau when the primal residual is
+ * more than mu times the dual one and divides it by tau in the opposite
+ * case. With admm.rho.balance.relative set, the residuals are compared
+ * relative to their tolerances, which keeps the rule independent of the
+ * scale of the problem.
+ */
+public class ResidualBalancingRhoUpdater extends Configured implements
+		RhoUpdater {
+	private static final float DEFAULT_MU = 5.0f;
+	private static final float DEFAULT_TAU = 1.5f;
+
+	private double mu = DEFAULT_MU;
+	private double tau = DEFAULT_TAU;
+	private boolean relative;
+
+	public void setConf(Configuration conf) {
+		super.setConf(conf);
+		if (null != conf) {
+			mu = conf.getFloat("admm.rho.mu", DEFAULT_MU);
+			tau = conf.getFloat("admm.rho.tau", DEFAULT_TAU);
+			relative = conf.getBoolean("admm.rho.balance.relative", false);
+		}
+	}
+
+	public double update(AdmmIterationStatus status,
+			AdmmReducerContext consensus, double[] zPrevious) {
+		double rNorm = status.getRNorm();
+		double sNorm = status.getSNorm();
+		if (relative) {
+			rNorm /= status.getEpsPrimal();
+			sNorm /= status.getEpsDual();
+		}
+		double rho = consensus.getRho();
+		if (rNorm > mu * sNorm) {
+			return rho * tau;
+		} else if (sNorm > mu * rNorm) {
+			return rho / tau;
+		}
+		return rho;
+	}
+}
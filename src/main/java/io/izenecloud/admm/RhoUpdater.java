@@ -0,0 +1,17 @@
+package io.izenecloud.admm;
+
+/**
+ * Adapts the ADMM penalty rho between iterations. One instance follows a
+ * whole run, so an implementation may keep state from one iteration to the
+ * next. The implementation is chosen with admm.rho.updater; when it is
+ * Configurable it is handed the job configuration.
+ */
+public interface RhoUpdater {
+	/**
+	 * Returns the rho of the next iteration. consensus holds the averaged x
+	 * and u, the new z and the rho of this iteration; zPrevious is the z
+	 * the iteration started from.
+	 */
+	double update(AdmmIterationStatus status, AdmmReducerContext consensus,
+			double[] zPrevious);
+}
@@ -0,0 +1,104 @@
+package io.izenecloud.admm;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+
+/**
+ * Spectral (Barzilai-Borwein) penalty of adaptive ADMM. Every period
+ * iterations the curvatures of the loss and of the regularizer are
+ * estimated from the change of x, z and the dual variable since the last
+ * estimate, and rho becomes their geometric mean. An estimate is only
+ * trusted when the changes it is built from are correlated by more than
+ * admm.rho.spectral.correlation; otherwise rho is kept. The estimates are
+ * taken on the averages over the splits.
+ */
+public class SpectralRhoUpdater extends Configured implements RhoUpdater {
+	private static final int DEFAULT_PERIOD = 2;
+	private static final float DEFAULT_CORRELATION = 0.2f;
+
+	private int period = DEFAULT_PERIOD;
+	private double correlation = DEFAULT_CORRELATION;
+
+	private int iteration0;
+	private double[] x0;
+	private double[] z0;
+	private double[] y0;
+	private double[] yHat0;
+
+	public void setConf(Configuration conf) {
+		super.setConf(conf);
+		if (null != conf) {
+			period = conf.getInt("admm.rho.spectral.period", DEFAULT_PERIOD);
+			correlation = conf.getFloat("admm.rho.spectral.correlation",
+					DEFAULT_CORRELATION);
+		}
+	}
+
+	public double update(AdmmIterationStatus status,
+			AdmmReducerContext consensus, double[] zPrevious) {
+		double rho = consensus.getRho();
+		double[] x = consensus.getXUpdated();
+		double[] u = consensus.getUInitial();
+		double[] z = consensus.getZUpdated();
+		// unscaled duals after the step, y = rho * (u + x - z), and before
+		// the z-update, yHat = rho * (u + x - zPrevious)
+		double[] y = new double[z.length];
+		double[] yHat = new double[z.length];
+		for (int i = 0; i < z.length; i++) {
+			y[i] = rho * (u[i] + x[i] - z[i]);
+			yHat[i] = rho * (u[i] + x[i] - zPrevious[i]);
+		}
+
+		if (null != x0 && status.getIteration() - iteration0 < period) {
+			return rho;
+		}
+		double next = rho;
+		if (null != x0 && x0.length == x.length) {
+			// the loss gradient at x is -yHat, the regularizer gradient at
+			// z is y
+			double xx = 0.0, xg = 0.0, gg = 0.0;
+			double zz = 0.0, zy = 0.0, yy = 0.0;
+			for (int i = 0; i < x.length; i++) {
+				double dx = x[i] - x0[i];
+				double dg = yHat0[i] - yHat[i];
+				double dz = z[i] - z0[i];
+				double dy = y[i] - y0[i];
+				xx += dx * dx;
+				xg += dx * dg;
+				gg += dg * dg;
+				zz += dz * dz;
+				zy += dz * dy;
+				yy += dy * dy;
+			}
+			double alphaCorrelation = xg / Math.sqrt(xx * gg);
+			double betaCorrelation = zy / Math.sqrt(zz * yy);
+			boolean useAlpha = alphaCorrelation > correlation;
+			boolean useBeta = betaCorrelation > correlation;
+			double alpha = curvature(gg / xg, xg / xx);
+			double beta = curvature(yy / zy, zy / zz);
+			if (useAlpha && useBeta) {
+				next = Math.sqrt(alpha * beta);
+			} else if (useAlpha) {
+				next = alpha;
+			} else if (useBeta) {
+				next = beta;
+			}
+		}
+
+		iteration0 = status.getIteration();
+		x0 = x.clone();
+		z0 = z.clone();
+		y0 = y;
+		yHat0 = yHat;
+		return next > 0 && !Double.isInfinite(next) ? next : rho;
+	}
+
+	/**
+	 * Hybrid of the steepest descent and minimum gradient step sizes.
+	 */
+	private static double curvature(double steepestDescent,
+			double minimumGradient) {
+		return 2 * minimumGradient > steepestDescent ? minimumGradient
+				: steepestDescent - minimumGradient / 2;
+	}
+}
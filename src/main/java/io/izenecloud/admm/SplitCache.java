@@ -0,0 +1,157 @@
+package io.izenecloud.admm;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MD5Hash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Side file holding the packed training matrix of one input split, so that
+ * ADMM iterations after the first one skip reading and decoding the
+ * SequenceFile records of their split.
+ *
+ * The file starts with a magic number and a format version, followed by
+ * numRows, numCols and the number of non-zeroes, then rowPtr, colIdx,
+ * values and labels as raw big-endian blocks.
+ */
+public final class SplitCache {
+	private static final Logger LOG = LoggerFactory.getLogger(SplitCache.class
+			.getName());
+	private static final int MAGIC = 0x4C415352;
+	private static final int VERSION = 1;
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private SplitCache() {
+	}
+
+	public static Path getPath(Path cacheLocation, String splitId) {
+		return new Path(cacheLocation, MD5Hash.digest(splitId).toString());
+	}
+
+	/**
+	 * Writes the matrix to a temporary file next to path and renames it, so
+	 * a failed attempt never leaves a truncated cache behind.
+	 */
+	public static void write(CompressedRowMatrix a, Path path, FileSystem fs)
+			throws IOException {
+		Path tmp = path.suffix("." + System.nanoTime() + ".tmp");
+		FSDataOutputStream out = fs.create(tmp, true);
+		try {
+			write(a, out);
+		} finally {
+			out.close();
+		}
+		if (!fs.rename(tmp, path)) {
+			// another attempt of the same split got there first
+			fs.delete(tmp, false);
+		}
+	}
+
+	/**
+	 * Returns the matrix cached at path, or null if there is none or it
+	 * cannot be used.
+	 */
+	public static CompressedRowMatrix read(Path path, FileSystem fs)
+			throws IOException {
+		if (!fs.exists(path)) {
+			return null;
+		}
+		FSDataInputStream in = fs.open(path, BUFFER_SIZE);
+		try {
+			CompressedRowMatrix a = read(in);
+			if (null == a) {
+				LOG.info("Ignore split cache {} of unknown format", path);
+			}
+			return a;
+		} finally {
+			in.close();
+		}
+	}
+
+	static void write(CompressedRowMatrix a, DataOutputStream out)
+			throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(a.numRows());
+		out.writeInt(a.numCols());
+		out.writeInt(a.numNonZeroes());
+		byte[] buffer = new byte[BUFFER_SIZE];
+		writeInts(out, a.getRowPtr(), a.numRows() + 1, buffer);
+		writeInts(out, a.getColIdx(), a.numNonZeroes(), buffer);
+		writeDoubles(out, a.getValues(), a.numNonZeroes(), buffer);
+		writeDoubles(out, a.getLabels(), a.numRows(), buffer);
+	}
+
+	/**
+	 * Reads a matrix written by {@link #write(CompressedRowMatrix,
+	 * DataOutputStream)}, or returns null if the stream is of another
+	 * format.
+	 */
+	static CompressedRowMatrix read(DataInputStream in) throws IOException {
+		if (MAGIC != in.readInt() || VERSION != in.readInt()) {
+			return null;
+		}
+		int numRows = in.readInt();
+		int numCols = in.readInt();
+		int numNonZeroes = in.readInt();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int[] rowPtr = readInts(in, numRows + 1, buffer);
+		int[] colIdx = readInts(in, numNonZeroes, buffer);
+		double[] values = readDoubles(in, numNonZeroes, buffer);
+		double[] labels = readDoubles(in, numRows, buffer);
+		return new CompressedRowMatrix(numRows, numCols, rowPtr, colIdx,
+				values, labels);
+	}
+
+	private static void writeInts(DataOutputStream out, int[] src, int length,
+			byte[] buffer) throws IOException {
+		int step = buffer.length / 4;
+		for (int off = 0; off < length; off += step) {
+			int n = Math.min(step, length - off);
+			ByteBuffer.wrap(buffer).asIntBuffer().put(src, off, n);
+			out.write(buffer, 0, n * 4);
+		}
+	}
+
+	private static void writeDoubles(DataOutputStream out, double[] src,
+			int length, byte[] buffer) throws IOException {
+		int step = buffer.length / 8;
+		for (int off = 0; off < length; off += step) {
+			int n = Math.min(step, length - off);
+			ByteBuffer.wrap(buffer).asDoubleBuffer().put(src, off, n);
+			out.write(buffer, 0, n * 8);
+		}
+	}
+
+	private static int[] readInts(DataInputStream in, int length,
+			byte[] buffer) throws IOException {
+		int[] dst = new int[length];
+		int step = buffer.length / 4;
+		for (int off = 0; off < length; off += step) {
+			int n = Math.min(step, length - off);
+			in.readFully(buffer, 0, n * 4);
+			ByteBuffer.wrap(buffer).asIntBuffer().get(dst, off, n);
+		}
+		return dst;
+	}
+
+	private static double[] readDoubles(DataInputStream in, int length,
+			byte[] buffer) throws IOException {
+		double[] dst = new double[length];
+		int step = buffer.length / 8;
+		for (int off = 0; off < length; off += step) {
+			int n = Math.min(step, length - off);
+			in.readFully(buffer, 0, n * 8);
+			ByteBuffer.wrap(buffer).asDoubleBuffer().get(dst, off, n);
+		}
+		return dst;
+	}
+}
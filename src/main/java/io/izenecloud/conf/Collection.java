@@ -98,6 +98,15 @@ class Collection {
 		return Float.valueOf(regularization_factor);
 	}
 
+	public Float getL1RegularizationFactor() {
+		String l1_regularization_factor = laser
+				.get("l1_regularization_factor");
+		if (null == l1_regularization_factor) {
+			return null;
+		}
+		return Float.valueOf(l1_regularization_factor);
+	}
+
 	public Boolean addIntercept() {
 		String add_intercept = laser.get("add_intercept");
 		if (null == add_intercept) {
@@ -114,6 +123,99 @@ class Collection {
 		return Integer.valueOf(offline_max_iteration);
 	}
 
+	public Integer getOfflineNumThreads() {
+		String offline_num_threads = laser.get("offline_num_threads");
+		if (null == offline_num_threads) {
+			return null;
+		}
+		return Integer.valueOf(offline_num_threads);
+	}
+
+	public Boolean onlineIncremental() {
+		String online_incremental = laser.get("online_incremental");
+		if (null == online_incremental) {
+			return null;
+		}
+		return Boolean.valueOf(online_incremental);
+	}
+
+	public Integer getOnlineReservoirSize() {
+		String online_reservoir_size = laser.get("online_reservoir_size");
+		if (null == online_reservoir_size) {
+			return null;
+		}
+		return Integer.valueOf(online_reservoir_size);
+	}
+
+	public Boolean onlineGrouped() {
+		String online_grouped = laser.get("online_grouped");
+		if (null == online_grouped) {
+			return null;
+		}
+		return Boolean.valueOf(online_grouped);
+	}
+
+	public Integer getOnlineGroupedBufferMb() {
+		String online_grouped_buffer_mb = laser.get("online_grouped_buffer_mb");
+		if (null == online_grouped_buffer_mb) {
+			return null;
+		}
+		return Integer.valueOf(online_grouped_buffer_mb);
+	}
+
+	public Integer getQuadraticHashBuckets() {
+		String quadratic_hash_buckets = laser.get("quadratic_hash_buckets");
+		if (null == quadratic_hash_buckets) {
+			return null;
+		}
+		return Integer.valueOf(quadratic_hash_buckets);
+	}
+
+	public Integer getOfflineModelPollSeconds() {
+		String offline_model_poll_seconds = laser
+				.get("offline_model_poll_seconds");
+		if (null == offline_model_poll_seconds) {
+			return null;
+		}
+		return Integer.valueOf(offline_model_poll_seconds);
+	}
+
+	public Integer getConsumerPartitions() {
+		String consumer_partitions = laser.get("consumer_partitions");
+		if (null == consumer_partitions) {
+			return null;
+		}
+		return Integer.valueOf(consumer_partitions);
+	}
+
+	public Integer getOnlineNumThreads() {
+		String online_num_threads = laser.get("online_num_threads");
+		if (null == online_num_threads) {
+			return null;
+		}
+		return Integer.valueOf(online_num_threads);
+	}
+
+	public Boolean sparseConsensus() {
+		String sparse_consensus = laser.get("offline_sparse_consensus");
+		if (null == sparse_consensus) {
+			return null;
+		}
+		return Boolean.valueOf(sparse_consensus);
+	}
+
+	public Boolean warmStart() {
+		String warm_start = laser.get("offline_warm_start");
+		if (null == warm_start) {
+			return null;
+		}
+		return Boolean.valueOf(warm_start);
+	}
+
+	public String getOfflineEngine() {
+		return laser.get("offline_engine");
+	}
+
 	public Class<? extends LaserMessageConsumer> getMessageConsumer()
 			throws ClassNotFoundException {
 		return (Class<? extends LaserMessageConsumer>) Class.forName(metaq
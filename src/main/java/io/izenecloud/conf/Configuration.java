@@ -135,6 +135,10 @@ public class Configuration {
 		return getCollection(collection).getRegularizationFactor();
 	}
 
+	public Float getL1RegularizationFactor(String collection) {
+		return getCollection(collection).getL1RegularizationFactor();
+	}
+
 	public Boolean addIntercept(String collection) {
 		return getCollection(collection).addIntercept();
 	}
@@ -143,6 +147,54 @@ public class Configuration {
 		return getCollection(collection).getMaxIteration();
 	}
 
+	public Integer getOfflineNumThreads(String collection) {
+		return getCollection(collection).getOfflineNumThreads();
+	}
+
+	public Boolean onlineIncremental(String collection) {
+		return getCollection(collection).onlineIncremental();
+	}
+
+	public Integer getOnlineReservoirSize(String collection) {
+		return getCollection(collection).getOnlineReservoirSize();
+	}
+
+	public Boolean onlineGrouped(String collection) {
+		return getCollection(collection).onlineGrouped();
+	}
+
+	public Integer getOnlineGroupedBufferMb(String collection) {
+		return getCollection(collection).getOnlineGroupedBufferMb();
+	}
+
+	public Integer getQuadraticHashBuckets(String collection) {
+		return getCollection(collection).getQuadraticHashBuckets();
+	}
+
+	public Integer getOfflineModelPollSeconds(String collection) {
+		return getCollection(collection).getOfflineModelPollSeconds();
+	}
+
+	public Integer getConsumerPartitions(String collection) {
+		return getCollection(collection).getConsumerPartitions();
+	}
+
+	public Integer getOnlineNumThreads(String collection) {
+		return getCollection(collection).getOnlineNumThreads();
+	}
+
+	public Boolean sparseConsensus(String collection) {
+		return getCollection(collection).sparseConsensus();
+	}
+
+	public Boolean warmStart(String collection) {
+		return getCollection(collection).warmStart();
+	}
+
+	public String getOfflineEngine(String collection) {
+		return getCollection(collection).getOfflineEngine();
+	}
+
 	public String getMsgpackAddress(String collection) {
 		return getCollection(collection).getMsgpackAddress();
 	}
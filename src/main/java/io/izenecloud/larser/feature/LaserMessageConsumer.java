@@ -1,6 +1,5 @@
 package io.izenecloud.larser.feature;
 
-import static io.izenecloud.HDFSHelper.*;
 import io.izenecloud.flume.B5MEvent;
 
 import java.io.IOException;
@@ -11,11 +10,9 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
-import org.apache.mahout.math.Matrix;
-import org.apache.mahout.math.SequentialAccessSparseVector;
+import org.apache.hadoop.io.Writable;
 import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.VectorWritable;
-import org.apache.mahout.math.Vector.Element;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,11 +25,11 @@ public abstract class LaserMessageConsumer {
 	private final Path output;
 	private final FileSystem fs;
 	private final Configuration conf;
-	private SequenceFile.Writer offlineWriter;
-	private SequenceFile.Writer onlineWriter;
-	private Vector alpha = null;
-	private Vector beta = null;
-	private Matrix quadratic = null;
+	private final PartitionedWriter<VectorWritable> offlineWriter;
+	private final PartitionedWriter<OnlineVectorWritable> onlineWriter;
+	private final boolean onlineGrouped;
+	private final int quadraticBuckets;
+	private final OfflineModelRegistry offlineModels;
 	private long offlineVersion = 0;
 	private long onlineVersion = 0;
 	private final String collection;
@@ -44,34 +41,63 @@ public abstract class LaserMessageConsumer {
 		this.fs = fs;
 		this.conf = conf;
 
-		Path onlinePath = new Path(output, ONLINE_FOLDER + "/"
-				+ Long.toString(onlineVersion));
-		onlineWriter = SequenceFile.createWriter(fs, conf, onlinePath,
-				Text.class, OnlineVectorWritable.class);
-		Path offlinePath = new Path(output, OFFLINE_FOLDER + "/"
-				+ Long.toString(offlineVersion));
-		offlineWriter = SequenceFile.createWriter(fs, conf, offlinePath,
-				Text.class, VectorWritable.class);
+		// every version is a directory of hash partitions by key, each
+		// with its own writer, so that the consumer threads do not queue
+		// on one output stream
+		int partitions = conf.getInt("laser.consumer.partitions", 1);
+		onlineGrouped = conf.getBoolean("laser.online.grouped", false);
+		quadraticBuckets = conf.getInt("laser.offline.quadratic.buckets", 0);
+		// the samples a grouped partition keeps in memory before spilling
+		final long groupedBufferBytes = conf.getLong(
+				"laser.online.grouped.buffer.mb", 64) << 20;
+		PartitionedWriter.PartitionFactory<OnlineVectorWritable> onlineFactory;
+		if (onlineGrouped) {
+			onlineFactory = new PartitionedWriter.PartitionFactory<OnlineVectorWritable>() {
+				public PartitionedWriter.Partition<OnlineVectorWritable> create(
+						Path path) throws IOException {
+					return new OnlineGroupWriter(LaserMessageConsumer.this.fs,
+							path, groupedBufferBytes);
+				}
+			};
+		} else {
+			onlineFactory = sequenceFiles(OnlineVectorWritable.class);
+		}
+		onlineWriter = new PartitionedWriter<OnlineVectorWritable>(onlinePath(),
+				partitions, onlineFactory);
+		offlineWriter = new PartitionedWriter<VectorWritable>(offlinePath(),
+				partitions, sequenceFiles(VectorWritable.class));
+		offlineModels = new OfflineModelRegistry(collection,
+				io.izenecloud.conf.Configuration.getInstance()
+						.getLaserOfflineOutput(collection), fs, conf);
+		offlineModels.refresh();
+		offlineModels.start(conf.getLong("laser.offline.model.poll.seconds",
+				60));
 	}
 
 	public synchronized void shutdown() throws IOException {
+		offlineModels.close();
 		offlineWriter.close();
 		onlineWriter.close();
 	}
 
+	/**
+	 * Whether the online samples are written by {@link OnlineGroupWriter},
+	 * rather than to a SequenceFile of one record per sample.
+	 */
+	public boolean isOnlineGrouped() {
+		return onlineGrouped;
+	}
+
+	/**
+	 * Loads the offline model of the collection now, should it be newer
+	 * than the one {@link #knownOffset(Request)} uses.
+	 */
 	public void loadOfflineMode() {
-		synchronized (alpha) {
-
-			try {
-				Path offlineModel = io.izenecloud.conf.Configuration.getInstance()
-						.getLaserOfflineOutput(collection);
-				alpha = readVector(new Path(offlineModel, "alpha"), fs, conf);
-				beta = readVector(new Path(offlineModel, "beta"), fs, conf);
-				quadratic = readMatrix(new Path(offlineModel, "A"), fs, conf);
-			} catch (Exception e) {
-				LOG.info("offline model does not exist, {}");
-			}
-		}
+		offlineModels.refresh();
+	}
+
+	public OfflineModelRegistry getOfflineModelRegistry() {
+		return offlineModels;
 	}
 
 	public abstract boolean write(B5MEvent b5mEvent) throws IOException;
@@ -82,93 +108,75 @@ public abstract class LaserMessageConsumer {
 
 	public void appendOnline(Text key, OnlineVectorWritable val)
 			throws IOException {
-		synchronized (onlineWriter) {
-			onlineWriter.append(key, val);
-		}
+		onlineWriter.append(key, val);
 	}
 
 	public void appendOffline(Text key, Request value) throws IOException {
 		Vector userFeature = value.getUserFeature();
 		Vector itemFeature = value.getItemFeature();
-		int userDimension = userFeature.size();
-		int itemDimension = itemFeature.size();
-		Vector offlineFeature = new SequentialAccessSparseVector(userDimension
-				+ itemDimension + userDimension * itemDimension + 1);
-
-		// first order
-		for (Element e : userFeature.nonZeroes()) {
-			offlineFeature.set(e.index(), e.get());
-		}
-		for (Element e : itemFeature.nonZeroes()) {
-			offlineFeature.set(userDimension + e.index(), e.get());
-		}
-		// second order
-		for (Element elementOfUser : userFeature.nonZeroes()) {
-			for (Element elemetOfItem : itemFeature.nonZeroes()) {
-				offlineFeature.set(elementOfUser.index() * elemetOfItem.index()
-						+ userDimension + itemDimension, elementOfUser.get()
-						* elemetOfItem.get());
-			}
-
-		}
-		// action
-		offlineFeature.set(offlineFeature.size() - 1, value.getAction());
-		synchronized (offlineWriter) {
-			offlineWriter.append(key, new VectorWritable(offlineFeature));
-		}
+		QuadraticFeatures features = new QuadraticFeatures(
+				userFeature.size(), itemFeature.size(), quadraticBuckets);
+		Vector offlineFeature = features.cross(userFeature, itemFeature,
+				value.getAction());
+		offlineWriter.append(key, new VectorWritable(offlineFeature));
 	}
 
-	public synchronized double knownOffset(Request value) throws IOException {
-
-		if (alpha == null || beta == null || quadratic == null) {
+	public double knownOffset(Request value) throws IOException {
+		OfflineModel model = offlineModels.get();
+		if (null == model) {
 			return 0;
 		}
-		Vector userFeature = value.getUserFeature();
-		double offset = alpha.dot(userFeature);
-		Vector itemFeature = value.getItemFeature();
-		offset += beta.dot(itemFeature);
-
-		for (int row = 0; row < quadratic.numRows(); row++) {
-			offset += userFeature.get(row)
-					* quadratic.viewRow(row).dot(itemFeature);
-		}
-		return offset;
-
+		return model.score(value.getUserFeature(), value.getItemFeature());
 	}
 
 	public Path nextOnlinePath() throws IOException {
-		LOG.info("try to increse online writer...");
 		synchronized (onlineWriter) {
-			LOG.info("locked online writer");
-			onlineWriter.close();
-			Path ret = new Path(output, ONLINE_FOLDER + "/"
-					+ Long.toString(onlineVersion));
 			onlineVersion++;
-			Path onlinePath = new Path(output, ONLINE_FOLDER + "/"
-					+ Long.toString(onlineVersion));
+			Path onlinePath = onlinePath();
 			LOG.info("Update online feature output path, to {}", onlinePath);
-			onlineWriter = SequenceFile.createWriter(fs, conf, onlinePath,
-					Text.class, OnlineVectorWritable.class);
-			return ret;
+			return onlineWriter.rotate(onlinePath);
 		}
 	}
 
 	public Path nextOfflinePath() throws IOException {
 		synchronized (offlineWriter) {
-			offlineWriter.close();
-			Path ret = new Path(output, OFFLINE_FOLDER + "/"
-					+ Long.toString(offlineVersion));
 			offlineVersion++;
-			Path offlinePath = new Path(output, ONLINE_FOLDER + "/"
-					+ Long.toString(offlineVersion));
+			Path offlinePath = offlinePath();
 			LOG.info("Update offline feature output path, to {}", offlinePath);
-
-			offlineWriter = SequenceFile.createWriter(fs, conf, offlinePath,
-					Text.class, VectorWritable.class);
-			return ret;
+			return offlineWriter.rotate(offlinePath);
 		}
 	}
 
+	private Path onlinePath() {
+		return new Path(output, ONLINE_FOLDER + "/"
+				+ Long.toString(onlineVersion));
+	}
+
+	private Path offlinePath() {
+		return new Path(output, OFFLINE_FOLDER + "/"
+				+ Long.toString(offlineVersion));
+	}
+
+	private <V extends Writable> PartitionedWriter.PartitionFactory<V> sequenceFiles(
+			final Class<V> valueClass) {
+		return new PartitionedWriter.PartitionFactory<V>() {
+			public PartitionedWriter.Partition<V> create(Path path)
+					throws IOException {
+				final SequenceFile.Writer writer = SequenceFile.createWriter(
+						fs, conf, path, Text.class, valueClass);
+				return new PartitionedWriter.Partition<V>() {
+					public void append(Text key, V value) throws IOException {
+						writer.append(key, value);
+					}
+
+					public void close() throws IOException {
+						writer.close();
+					}
+				};
+			}
+		};
+	}
+
 	public String getCollection() {
 		return collection;
 	}
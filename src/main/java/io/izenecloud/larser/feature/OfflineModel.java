@@ -0,0 +1,159 @@
+package io.izenecloud.larser.feature;
+
+import static io.izenecloud.HDFSHelper.readVector;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.SequentialAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.Vector.Element;
+
+/**
+ * Read-only snapshot of the offline model alpha, beta and A, scoring
+ * events without locks. A is kept in compressed sparse row layout, the
+ * columns of every row ascending, so that the score of a user and an item
+ * only visits their non-zero features and the weights of the non-zero
+ * user rows. A of hashed crosses is kept as its bucket weights, and the
+ * score visits the crosses of the non-zero features.
+ */
+public final class OfflineModel {
+	private final double[] alpha;
+	private final double[] beta;
+	private final int[] rowPtr;
+	private final int[] colIdx;
+	private final double[] values;
+	private final QuadraticWeights hashed;
+
+	private OfflineModel(double[] alpha, double[] beta, int[] rowPtr,
+			int[] colIdx, double[] values, QuadraticWeights hashed) {
+		this.alpha = alpha;
+		this.beta = beta;
+		this.rowPtr = rowPtr;
+		this.colIdx = colIdx;
+		this.values = values;
+		this.hashed = hashed;
+	}
+
+	/**
+	 * Reads the model written by LaserOfflineResultWriter under model.
+	 */
+	public static OfflineModel read(Path model, FileSystem fs,
+			Configuration conf) throws IOException {
+		Vector alpha = readVector(new Path(model, "alpha"), fs, conf);
+		Vector beta = readVector(new Path(model, "beta"), fs, conf);
+		return of(alpha, beta, QuadraticWeights.read(model, alpha.size(),
+				beta.size(), fs, conf));
+	}
+
+	public static OfflineModel of(Vector alpha, Vector beta,
+			QuadraticWeights A) {
+		if (!A.isHashed()) {
+			return of(alpha, beta, A.getMatrix());
+		}
+		return new OfflineModel(toArray(alpha), toArray(beta), null, null,
+				null, A);
+	}
+
+	public static OfflineModel of(Vector alpha, Vector beta, Matrix A) {
+		int numRows = A.numRows();
+		int[] rowPtr = new int[numRows + 1];
+		Vector[] rows = new Vector[numRows];
+		for (int row = 0; row < numRows; row++) {
+			Vector v = A.viewRow(row);
+			rows[row] = v.isSequentialAccess() ? v
+					: new SequentialAccessSparseVector(v);
+			int count = 0;
+			for (Element e : rows[row].nonZeroes()) {
+				count++;
+			}
+			rowPtr[row + 1] = rowPtr[row] + count;
+		}
+		int[] colIdx = new int[rowPtr[numRows]];
+		double[] values = new double[colIdx.length];
+		int k = 0;
+		for (int row = 0; row < numRows; row++) {
+			for (Element e : rows[row].nonZeroes()) {
+				colIdx[k] = e.index();
+				values[k++] = e.get();
+			}
+		}
+		return new OfflineModel(toArray(alpha), toArray(beta), rowPtr,
+				colIdx, values, null);
+	}
+
+	/**
+	 * The number of stored quadratic weights, the buckets when hashed.
+	 */
+	public int numNonZeroes() {
+		return null == hashed ? colIdx.length : hashed.getBuckets().length;
+	}
+
+	/**
+	 * alpha . user + beta . item + user' A item; features beyond the
+	 * dimensions of the model score nothing.
+	 */
+	public double score(Vector user, Vector item) {
+		int[] itemIndex = new int[item.getNumNondefaultElements()];
+		double[] itemValue = new double[itemIndex.length];
+		int numItem = 0;
+		double offset = 0.0;
+		for (Element e : item.nonZeroes()) {
+			if (numItem == itemIndex.length) {
+				break;
+			}
+			if (e.index() < beta.length) {
+				offset += beta[e.index()] * e.get();
+			}
+			itemIndex[numItem] = e.index();
+			itemValue[numItem++] = e.get();
+		}
+
+		int numRows = null == hashed ? rowPtr.length - 1 : hashed.numRows();
+		for (Element e : user.nonZeroes()) {
+			int row = e.index();
+			if (row < alpha.length) {
+				offset += alpha[row] * e.get();
+			}
+			if (row >= numRows) {
+				continue;
+			}
+			if (null != hashed) {
+				double rowDotItem = 0.0;
+				for (int k = 0; k < numItem; k++) {
+					if (itemIndex[k] < beta.length) {
+						rowDotItem += hashed.get(row, itemIndex[k])
+								* itemValue[k];
+					}
+				}
+				offset += e.get() * rowDotItem;
+				continue;
+			}
+			if (rowPtr[row] == rowPtr[row + 1]) {
+				continue;
+			}
+			double rowDotItem = 0.0;
+			for (int k = 0; k < numItem; k++) {
+				int at = Arrays.binarySearch(colIdx, rowPtr[row],
+						rowPtr[row + 1], itemIndex[k]);
+				if (at >= 0) {
+					rowDotItem += values[at] * itemValue[k];
+				}
+			}
+			offset += e.get() * rowDotItem;
+		}
+		return offset;
+	}
+
+	private static double[] toArray(Vector v) {
+		double[] a = new double[v.size()];
+		for (Element e : v.nonZeroes()) {
+			a[e.index()] = e.get();
+		}
+		return a;
+	}
+}
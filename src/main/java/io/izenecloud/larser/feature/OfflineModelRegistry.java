@@ -0,0 +1,152 @@
+package io.izenecloud.larser.feature;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the current {@link OfflineModel} of a collection and replaces it
+ * when a newer one is written. The writer of the model touches
+ * {@link #MARKER} under the model path after alpha, beta and A; a model is
+ * loaded when the marker is newer than the loaded version, by
+ * {@link #refresh()} or every period seconds on a thread of its own, never
+ * on the threads reading {@link #get()}. A load overlapping a write is
+ * followed by another as the marker is touched again.
+ */
+public class OfflineModelRegistry {
+	private static final Logger LOG = LoggerFactory
+			.getLogger(OfflineModelRegistry.class);
+	public static final String MARKER = "_SUCCESS";
+
+	private final String collection;
+	private final Path model;
+	private final FileSystem fs;
+	private final Configuration conf;
+	private ScheduledExecutorService watcher = null;
+
+	private volatile OfflineModel current = null;
+	private volatile long version = 0L;
+	private volatile long lastLoadMillis = 0L;
+	private volatile long numLoads = 0L;
+	private volatile long numFailures = 0L;
+
+	public OfflineModelRegistry(String collection, Path model, FileSystem fs,
+			Configuration conf) {
+		this.collection = collection;
+		this.model = model;
+		this.fs = fs;
+		this.conf = conf;
+	}
+
+	/**
+	 * The current model, or null before the first load.
+	 */
+	public OfflineModel get() {
+		return current;
+	}
+
+	/**
+	 * Loads the model if there is a newer one than the current, and returns
+	 * whether it did.
+	 */
+	public synchronized boolean refresh() {
+		try {
+			long written = writtenAt();
+			if (written <= version) {
+				return false;
+			}
+			long start = System.currentTimeMillis();
+			OfflineModel loaded = OfflineModel.read(model, fs, conf);
+			lastLoadMillis = System.currentTimeMillis() - start;
+			current = loaded;
+			version = written;
+			numLoads++;
+			LOG.info("offline model {} of {} loaded in {} ms, {} quadratic weights",
+					new Object[] { written, collection, lastLoadMillis,
+							loaded.numNonZeroes() });
+			return true;
+		} catch (IOException e) {
+			numFailures++;
+			LOG.warn("failed to load offline model of {}, {}", collection,
+					e.getMessage());
+			return false;
+		} catch (RuntimeException e) {
+			// a malformed model must not end the watcher, which stops
+			// rescheduling on the first exception it sees
+			numFailures++;
+			LOG.error("failed to load offline model of " + collection, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Starts watching the model, checking every period seconds.
+	 */
+	public synchronized void start(long period) {
+		if (null != watcher) {
+			return;
+		}
+		watcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "offline-model-" + collection);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		watcher.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				refresh();
+			}
+		}, 0, period, TimeUnit.SECONDS);
+	}
+
+	public synchronized void close() {
+		if (null != watcher) {
+			watcher.shutdownNow();
+			watcher = null;
+		}
+	}
+
+	/**
+	 * Modification time of the loaded model, 0 before the first load.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Milliseconds the last load took.
+	 */
+	public long getLastLoadMillis() {
+		return lastLoadMillis;
+	}
+
+	public long getNumLoads() {
+		return numLoads;
+	}
+
+	public long getNumFailures() {
+		return numFailures;
+	}
+
+	private long writtenAt() throws IOException {
+		Path marker = new Path(model, MARKER);
+		if (fs.exists(marker)) {
+			return fs.getFileStatus(marker).getModificationTime();
+		}
+		// models written before the marker was
+		Path alpha = new Path(model, "alpha");
+		if (fs.exists(alpha)) {
+			return fs.getFileStatus(alpha).getModificationTime();
+		}
+		return 0L;
+	}
+}
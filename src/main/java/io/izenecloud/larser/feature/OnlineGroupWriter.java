@@ -0,0 +1,259 @@
+package io.izenecloud.larser.feature;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Collects the online samples of one period and partition grouped by key
+ * and writes them, on {@link #close()}, to one file as a sequence of
+ * groups sorted by key:
+ *
+ * <pre>
+ * vint  length of the rest of the group in bytes
+ * Text  key
+ * vint  number of samples
+ *       the samples, each as written by OnlineVectorWritable
+ * </pre>
+ *
+ * The samples are kept serialized until then, at most maxBufferBytes of
+ * them: beyond, the buffer is spilled as a sorted run of groups in the
+ * same format to a hidden file beside path, flushed to the file system, and
+ * the runs are merged into path on close, the samples of a key in the
+ * order they were appended. Not thread safe, see {@link PartitionedWriter}
+ * for writing several partitions.
+ */
+public class OnlineGroupWriter implements
+		PartitionedWriter.Partition<OnlineVectorWritable> {
+	private final FileSystem fs;
+	private final Path path;
+	private final long maxBufferBytes;
+	private final Map<Text, Group> groups = new TreeMap<Text, Group>();
+	private final List<Path> runs = new ArrayList<Path>();
+	private long bufferBytes = 0;
+	private long numSamples = 0;
+
+	public OnlineGroupWriter(FileSystem fs, Path path) {
+		this(fs, path, Long.MAX_VALUE);
+	}
+
+	public OnlineGroupWriter(FileSystem fs, Path path, long maxBufferBytes) {
+		this.fs = fs;
+		this.path = path;
+		this.maxBufferBytes = maxBufferBytes;
+	}
+
+	public void append(Text key, OnlineVectorWritable value)
+			throws IOException {
+		Group group = groups.get(key);
+		if (null == group) {
+			group = new Group();
+			groups.put(new Text(key), group);
+			bufferBytes += key.getLength();
+		}
+		int size = group.bytes.size();
+		value.write(group.out);
+		group.count++;
+		bufferBytes += group.bytes.size() - size;
+		numSamples++;
+		if (bufferBytes >= maxBufferBytes) {
+			spill();
+		}
+	}
+
+	public long getNumSamples() {
+		return numSamples;
+	}
+
+	/**
+	 * Number of runs spilled so far.
+	 */
+	public int getNumRuns() {
+		return runs.size();
+	}
+
+	public void close() throws IOException {
+		if (runs.isEmpty()) {
+			FSDataOutputStream out = fs.create(path, true);
+			try {
+				writeGroups(out);
+			} finally {
+				groups.clear();
+				out.close();
+			}
+			return;
+		}
+		if (!groups.isEmpty()) {
+			spill();
+		}
+		merge();
+	}
+
+	private void spill() throws IOException {
+		Path run = new Path(path.getParent(), "_" + path.getName() + ".run-"
+				+ runs.size());
+		FSDataOutputStream out = fs.create(run, true);
+		try {
+			writeGroups(out);
+			// the run survives the consumer from here on
+			out.hflush();
+		} finally {
+			groups.clear();
+			bufferBytes = 0;
+			out.close();
+		}
+		runs.add(run);
+	}
+
+	private void writeGroups(FSDataOutputStream out) throws IOException {
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		DataOutputStream headerOut = new DataOutputStream(header);
+		for (Map.Entry<Text, Group> entry : groups.entrySet()) {
+			Group group = entry.getValue();
+			writeHeader(header, headerOut, entry.getKey(), group.count);
+			WritableUtils.writeVInt(out, header.size() + group.bytes.size());
+			header.writeTo(out);
+			group.bytes.writeTo(out);
+		}
+	}
+
+	private static void writeHeader(ByteArrayOutputStream header,
+			DataOutputStream headerOut, Text key, int count) throws IOException {
+		header.reset();
+		key.write(headerOut);
+		WritableUtils.writeVInt(headerOut, count);
+		headerOut.flush();
+	}
+
+	/**
+	 * Merges the runs into path, one group per key holding the samples of
+	 * the key from every run, earlier runs first, then deletes the runs.
+	 */
+	private void merge() throws IOException {
+		PriorityQueue<Run> queue = new PriorityQueue<Run>(runs.size(),
+				new Comparator<Run>() {
+					public int compare(Run a, Run b) {
+						int c = a.key.compareTo(b.key);
+						return 0 != c ? c : a.index - b.index;
+					}
+				});
+		List<Run> opened = new ArrayList<Run>(runs.size());
+		FSDataOutputStream out = null;
+		try {
+			for (int i = 0; i < runs.size(); i++) {
+				Run run = new Run(i, fs.open(runs.get(i)), fs.getFileStatus(
+						runs.get(i)).getLen());
+				opened.add(run);
+				if (run.next()) {
+					queue.add(run);
+				}
+			}
+			out = fs.create(path, true);
+			ByteArrayOutputStream header = new ByteArrayOutputStream();
+			DataOutputStream headerOut = new DataOutputStream(header);
+			List<Run> same = new ArrayList<Run>(runs.size());
+			while (!queue.isEmpty()) {
+				same.clear();
+				same.add(queue.poll());
+				Text key = same.get(0).key;
+				while (!queue.isEmpty() && queue.peek().key.equals(key)) {
+					same.add(queue.poll());
+				}
+				int count = 0;
+				int length = 0;
+				for (Run run : same) {
+					count += run.count;
+					length += run.length - run.offset;
+				}
+				writeHeader(header, headerOut, key, count);
+				WritableUtils.writeVInt(out, header.size() + length);
+				header.writeTo(out);
+				for (Run run : same) {
+					out.write(run.group, run.offset, run.length - run.offset);
+				}
+				for (Run run : same) {
+					if (run.next()) {
+						queue.add(run);
+					}
+				}
+			}
+		} finally {
+			for (Run run : opened) {
+				run.close();
+			}
+			if (null != out) {
+				out.close();
+			}
+		}
+		for (Path run : runs) {
+			fs.delete(run, false);
+		}
+		runs.clear();
+	}
+
+	private static class Group {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+		private int count = 0;
+	}
+
+	/**
+	 * A spilled run read one group at a time: the key, the count and the
+	 * group bytes, the samples from offset to length.
+	 */
+	private static class Run {
+		private final int index;
+		private final FSDataInputStream in;
+		private final long fileLength;
+		private Text key;
+		private int count;
+		private byte[] group = new byte[0];
+		private int offset;
+		private int length;
+
+		Run(int index, FSDataInputStream in, long fileLength) {
+			this.index = index;
+			this.in = in;
+			this.fileLength = fileLength;
+		}
+
+		boolean next() throws IOException {
+			if (in.getPos() >= fileLength) {
+				return false;
+			}
+			length = WritableUtils.readVInt(in);
+			// the previous group has been written out by now
+			if (group.length < length) {
+				group = new byte[length];
+			}
+			in.readFully(group, 0, length);
+			ByteArrayInputStream bytes = new ByteArrayInputStream(group, 0,
+					length);
+			DataInputStream groupIn = new DataInputStream(bytes);
+			key = new Text();
+			key.readFields(groupIn);
+			count = WritableUtils.readVInt(groupIn);
+			offset = length - bytes.available();
+			return true;
+		}
+
+		void close() throws IOException {
+			in.close();
+		}
+	}
+}
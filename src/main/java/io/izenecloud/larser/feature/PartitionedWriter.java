@@ -0,0 +1,131 @@
+package io.izenecloud.larser.feature;
+
+import java.io.IOException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+
+/**
+ * Writes the records of the consumer threads into numPartitions files
+ * part-00000, part-00001, ... under a directory, a key going to partition
+ * hash(key) mod numPartitions as the HashPartitioner of MapReduce would
+ * send it. Every partition has its own lock, so threads appending to
+ * different partitions do not wait for each other; {@link #rotate(Path)}
+ * closes all partitions and opens the next directory as one step, no
+ * append being split between the two.
+ */
+public class PartitionedWriter<V extends Writable> {
+
+	/**
+	 * One partition file, called under the lock of the partition only.
+	 */
+	public interface Partition<V> {
+		void append(Text key, V value) throws IOException;
+
+		void close() throws IOException;
+	}
+
+	public interface PartitionFactory<V> {
+		Partition<V> create(Path path) throws IOException;
+	}
+
+	private final PartitionFactory<V> factory;
+	private final Partition<V>[] partitions;
+	private final Object[] locks;
+	// appenders share it, rotation takes it exclusively
+	private final ReadWriteLock rotation = new ReentrantReadWriteLock();
+	private Path directory;
+
+	@SuppressWarnings("unchecked")
+	public PartitionedWriter(Path directory, int numPartitions,
+			PartitionFactory<V> factory) throws IOException {
+		if (numPartitions < 1) {
+			throw new IllegalArgumentException("numPartitions = "
+					+ numPartitions);
+		}
+		this.factory = factory;
+		this.partitions = new Partition[numPartitions];
+		this.locks = new Object[numPartitions];
+		for (int i = 0; i < numPartitions; i++) {
+			locks[i] = new Object();
+		}
+		open(directory);
+	}
+
+	public int getNumPartitions() {
+		return partitions.length;
+	}
+
+	public void append(Text key, V value) throws IOException {
+		int i = partition(key, partitions.length);
+		rotation.readLock().lock();
+		try {
+			synchronized (locks[i]) {
+				partitions[i].append(key, value);
+			}
+		} finally {
+			rotation.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Closes the partitions of the current directory, which is returned,
+	 * and continues under next.
+	 */
+	public Path rotate(Path next) throws IOException {
+		rotation.writeLock().lock();
+		try {
+			Path ret = directory;
+			closePartitions();
+			open(next);
+			return ret;
+		} finally {
+			rotation.writeLock().unlock();
+		}
+	}
+
+	public void close() throws IOException {
+		rotation.writeLock().lock();
+		try {
+			closePartitions();
+		} finally {
+			rotation.writeLock().unlock();
+		}
+	}
+
+	public static int partition(Text key, int numPartitions) {
+		return (key.hashCode() & Integer.MAX_VALUE) % numPartitions;
+	}
+
+	public static Path partitionPath(Path directory, int partition) {
+		return new Path(directory, String.format("part-%05d", partition));
+	}
+
+	private void open(Path next) throws IOException {
+		for (int i = 0; i < partitions.length; i++) {
+			partitions[i] = factory.create(partitionPath(next, i));
+		}
+		directory = next;
+	}
+
+	private void closePartitions() throws IOException {
+		IOException failure = null;
+		for (int i = 0; i < partitions.length; i++) {
+			if (null == partitions[i]) {
+				continue;
+			}
+			try {
+				partitions[i].close();
+			} catch (IOException e) {
+				failure = e;
+			}
+			partitions[i] = null;
+		}
+		if (null != failure) {
+			throw failure;
+		}
+	}
+}
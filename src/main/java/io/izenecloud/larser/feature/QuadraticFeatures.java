@@ -0,0 +1,174 @@
+package io.izenecloud.larser.feature;
+
+import java.util.Arrays;
+
+import org.apache.mahout.math.SequentialAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.Vector.Element;
+
+/**
+ * Layout of the offline feature vector of a user and an item:
+ *
+ * <pre>
+ * [0, u)                  user features
+ * [u, u + i)              item features
+ * [u + i, u + i + width)  user x item crosses
+ * u + i + width           action
+ * </pre>
+ *
+ * A cross of user feature r and item feature c goes to r * i + c, so that
+ * width is u * i, or with buckets &gt; 0 to one of buckets indexes chosen
+ * by a hash of (r, c), with a hashed sign, keeping the width bounded
+ * whatever u and i are; crosses meeting in one bucket add up.
+ */
+public class QuadraticFeatures {
+	private final int userDimension;
+	private final int itemDimension;
+	private final int buckets;
+
+	public QuadraticFeatures(int userDimension, int itemDimension, int buckets) {
+		this.userDimension = userDimension;
+		this.itemDimension = itemDimension;
+		this.buckets = buckets;
+	}
+
+	public static QuadraticFeatures of(String collection) {
+		io.izenecloud.conf.Configuration configuration = io.izenecloud.conf.Configuration
+				.getInstance();
+		Integer buckets = configuration.getQuadraticHashBuckets(collection);
+		return new QuadraticFeatures(
+				configuration.getUserFeatureDimension(collection),
+				configuration.getItemFeatureDimension(collection),
+				null == buckets ? 0 : buckets);
+	}
+
+	public boolean isHashed() {
+		return buckets > 0;
+	}
+
+	public int getCrossWidth() {
+		return isHashed() ? buckets : userDimension * itemDimension;
+	}
+
+	/**
+	 * The number of features, the action not counted.
+	 */
+	public int getNumFeatures() {
+		return userDimension + itemDimension + getCrossWidth();
+	}
+
+	/**
+	 * The feature of the cross of user feature row and item feature col.
+	 */
+	public int crossIndex(int row, int col) {
+		int offset = userDimension + itemDimension;
+		if (!isHashed()) {
+			return offset + row * itemDimension + col;
+		}
+		return offset + (hash(row, col) & Integer.MAX_VALUE) % buckets;
+	}
+
+	/**
+	 * The factor the cross of row and col enters its feature with, 1 but
+	 * in a hashed layout, where it is the hashed sign.
+	 */
+	public double crossSign(int row, int col) {
+		return isHashed() && hash(row, col) < 0 ? -1.0 : 1.0;
+	}
+
+	/**
+	 * The offline feature vector, built in index order: the first order
+	 * features and crosses are written into primitive arrays of the final
+	 * size and appended to the vector one after another.
+	 */
+	public Vector cross(Vector user, Vector item, double action) {
+		int[] userIndex = new int[user.getNumNondefaultElements()];
+		double[] userValue = new double[userIndex.length];
+		int numUser = nonZeroes(user, userIndex, userValue);
+		int[] itemIndex = new int[item.getNumNondefaultElements()];
+		double[] itemValue = new double[itemIndex.length];
+		int numItem = nonZeroes(item, itemIndex, itemValue);
+
+		int numCross = numUser * numItem;
+		int[] index = new int[numUser + numItem + numCross + 1];
+		double[] value = new double[index.length];
+		int n = 0;
+		for (int k = 0; k < numUser; k++) {
+			index[n] = userIndex[k];
+			value[n++] = userValue[k];
+		}
+		for (int k = 0; k < numItem; k++) {
+			index[n] = userDimension + itemIndex[k];
+			value[n++] = itemValue[k];
+		}
+		if (!isHashed()) {
+			// rows and columns ascending give ascending indexes
+			for (int r = 0; r < numUser; r++) {
+				for (int c = 0; c < numItem; c++) {
+					index[n] = crossIndex(userIndex[r], itemIndex[c]);
+					value[n++] = userValue[r] * itemValue[c];
+				}
+			}
+		} else {
+			// (bucket, position of the cross) sorts the crosses by bucket
+			long[] order = new long[numCross];
+			double[] crossValue = new double[numCross];
+			for (int r = 0; r < numUser; r++) {
+				for (int c = 0; c < numItem; c++) {
+					int k = r * numItem + c;
+					order[k] = ((long) crossIndex(userIndex[r], itemIndex[c]) << 32)
+							| k;
+					crossValue[k] = crossSign(userIndex[r], itemIndex[c])
+							* userValue[r] * itemValue[c];
+				}
+			}
+			Arrays.sort(order);
+			for (int k = 0; k < numCross; k++) {
+				int bucket = (int) (order[k] >>> 32);
+				double v = crossValue[(int) order[k]];
+				if (n > 0 && index[n - 1] == bucket) {
+					value[n - 1] += v;
+				} else {
+					index[n] = bucket;
+					value[n++] = v;
+				}
+			}
+		}
+		index[n] = getNumFeatures();
+		value[n++] = action;
+
+		Vector result = new SequentialAccessSparseVector(getNumFeatures() + 1, n);
+		for (int k = 0; k < n; k++) {
+			if (0.0 != value[k]) {
+				result.setQuick(index[k], value[k]);
+			}
+		}
+		return result;
+	}
+
+	private static int nonZeroes(Vector vector, int[] index, double[] value) {
+		if (!vector.isSequentialAccess()) {
+			vector = new SequentialAccessSparseVector(vector);
+		}
+		int n = 0;
+		for (Element e : vector.nonZeroes()) {
+			if (n == index.length) {
+				break;
+			}
+			index[n] = e.index();
+			value[n++] = e.get();
+		}
+		return n;
+	}
+
+	private static int hash(int row, int col) {
+		// murmur3 finalizer over both coordinates
+		int h = row * 0x9E3779B1 + col;
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		h *= 0xC2B2AE35;
+		h ^= h >>> 16;
+		return h;
+	}
+}
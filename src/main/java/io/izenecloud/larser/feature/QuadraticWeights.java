@@ -0,0 +1,132 @@
+package io.izenecloud.larser.feature;
+
+import static io.izenecloud.HDFSHelper.*;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.Vector.Element;
+
+/**
+ * The quadratic block A of the offline model, user feature rows by item
+ * feature columns. A of the full crosses is stored as a matrix under
+ * {@link #MATRIX}. Trained with hashed crosses, A[row][col] is
+ * crossSign(row, col) times the weight of the bucket of (row, col), dense
+ * however few buckets there are, so only the bucket weights are stored,
+ * under {@link #BUCKETS}, and the entries of A are computed when read.
+ */
+public class QuadraticWeights {
+	public static final String MATRIX = "A";
+	public static final String BUCKETS = "CROSS";
+
+	private final int numRows;
+	private final int numCols;
+	private final Matrix matrix;
+	private final QuadraticFeatures features;
+	private final double[] buckets;
+
+	private QuadraticWeights(int numRows, int numCols, Matrix matrix,
+			double[] buckets) {
+		this.numRows = numRows;
+		this.numCols = numCols;
+		this.matrix = matrix;
+		this.buckets = buckets;
+		this.features = null == buckets ? null : new QuadraticFeatures(
+				numRows, numCols, buckets.length);
+	}
+
+	public static QuadraticWeights of(Matrix A) {
+		return new QuadraticWeights(A.numRows(), A.numCols(), A, null);
+	}
+
+	/**
+	 * A of numRows user and numCols item features crossed into the given
+	 * bucket weights.
+	 */
+	public static QuadraticWeights hashed(int numRows, int numCols,
+			Vector buckets) {
+		double[] weights = new double[buckets.size()];
+		for (Element e : buckets.nonZeroes()) {
+			weights[e.index()] = e.get();
+		}
+		return new QuadraticWeights(numRows, numCols, null, weights);
+	}
+
+	/**
+	 * Whether A of the model under path is stored at all.
+	 */
+	public static boolean exists(Path model, FileSystem fs) throws IOException {
+		return fs.exists(new Path(model, BUCKETS))
+				|| fs.exists(new Path(model, MATRIX));
+	}
+
+	/**
+	 * Reads A of the model under path, of numRows user and numCols item
+	 * features, the sizes of alpha and beta.
+	 */
+	public static QuadraticWeights read(Path model, int numRows, int numCols,
+			FileSystem fs, Configuration conf) throws IOException {
+		Path buckets = new Path(model, BUCKETS);
+		if (fs.exists(buckets)) {
+			return hashed(numRows, numCols, readVector(buckets, fs, conf));
+		}
+		return of(readMatrix(new Path(model, MATRIX), fs, conf));
+	}
+
+	public boolean isHashed() {
+		return null != buckets;
+	}
+
+	public int numRows() {
+		return numRows;
+	}
+
+	public int numCols() {
+		return numCols;
+	}
+
+	/**
+	 * The stored matrix, null when hashed.
+	 */
+	public Matrix getMatrix() {
+		return matrix;
+	}
+
+	/**
+	 * The bucket weights, null when not hashed.
+	 */
+	public double[] getBuckets() {
+		return buckets;
+	}
+
+	public double get(int row, int col) {
+		if (!isHashed()) {
+			return matrix.getQuick(row, col);
+		}
+		return features.crossSign(row, col) * buckets[bucket(row, col)];
+	}
+
+	/**
+	 * A[row] . item, visiting the non-zero features of item.
+	 */
+	public double rowDot(int row, Vector item) {
+		if (!isHashed()) {
+			return matrix.viewRow(row).dot(item);
+		}
+		double dot = 0.0;
+		for (Element e : item.nonZeroes()) {
+			if (e.index() < numCols) {
+				dot += get(row, e.index()) * e.get();
+			}
+		}
+		return dot;
+	}
+
+	private int bucket(int row, int col) {
+		return features.crossIndex(row, col) - numRows - numCols;
+	}
+}
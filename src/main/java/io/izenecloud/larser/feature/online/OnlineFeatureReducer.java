@@ -18,7 +18,9 @@ public class OnlineFeatureReducer extends
 			Context context) throws IOException, InterruptedException {
 		List<Writable> list = new LinkedList<Writable>();
 		for (OnlineVectorWritable value : values) {
-			list.add(value);
+			// the framework reuses value, its sample is read anew each time
+			list.add(new OnlineVectorWritable(value.getOffset(), value
+					.getOction(), value.getSample()));
 		}
 		context.write(key, new ListWritable(list));
 	}
@@ -0,0 +1,25 @@
+package io.izenecloud.larser.feature.online;
+
+import io.izenecloud.larser.feature.OnlineVectorWritable;
+import io.izenecloud.lr.ListWritable;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Mapper;
+
+/**
+ * Emits the samples of the grouped online input one by one, as
+ * {@link OnlineFeatureMapper} does for the ungrouped one.
+ */
+public class OnlineGroupMapper extends
+		Mapper<Text, ListWritable, Text, OnlineVectorWritable> {
+
+	protected void map(Text key, ListWritable value, Context context)
+			throws IOException, InterruptedException {
+		for (Writable sample : value.get()) {
+			context.write(key, (OnlineVectorWritable) sample);
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package io.izenecloud.larser.feature.online;
+
+import io.izenecloud.larser.feature.OnlineVectorWritable;
+import io.izenecloud.lr.ListWritable;
+import io.izenecloud.lr.OnlineGroupInputFormat;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.GlobFilter;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.mahout.common.HadoopUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Incremental grouping of the online events: only the new events are
+ * shuffled, and every reducer merges them into its partition of the
+ * reservoir of recent samples per key, see {@link OnlineReservoirReducer}.
+ * The keys with new events, with their whole reservoir, are what the
+ * online training has to retrain.
+ */
+public class OnlineReservoirDriver {
+	private static final Logger LOG = LoggerFactory
+			.getLogger(OnlineReservoirDriver.class);
+	public static final int DEFAULT_RESERVOIR_SIZE = 100;
+	private static final int DEFAULT_PARTITIONS = 16;
+
+	/**
+	 * Merges the events under input into the reservoir and writes the new
+	 * reservoir to output and the keys with new events to dirty. Returns
+	 * the number of keys with new events. The reservoir is left untouched
+	 * until {@link #commit(Path, Path, Path, Configuration)}.
+	 */
+	public static long run(String collection, Path input, Path reservoir,
+			Path output, Path dirty, Configuration baseConf)
+			throws IOException, ClassNotFoundException, InterruptedException {
+		Configuration conf = new Configuration(baseConf);
+		FileSystem fs = reservoir.getFileSystem(conf);
+		// a key has to meet its partition of the reservoir
+		int partitions = fs.exists(reservoir) ? fs.listStatus(reservoir,
+				new GlobFilter("part-r-*")).length : 0;
+		if (0 == partitions) {
+			partitions = conf.getInt("lr.reservoir.partitions",
+					DEFAULT_PARTITIONS);
+		}
+		conf.set("lr.reservoir.location", reservoir.toString());
+		conf.set("lr.reservoir.dirty.location", dirty.toString());
+		// every task owns one dirty file
+		conf.setBoolean("mapred.reduce.tasks.speculative.execution", false);
+
+		Job job = Job.getInstance(conf);
+		job.setJarByClass(OnlineReservoirDriver.class);
+		job.setJobName("MERGE new online events of " + collection
+				+ " INTO reservoir");
+
+		FileInputFormat.setInputPaths(job, input);
+		FileOutputFormat.setOutputPath(job, output);
+
+		if (conf.getBoolean("lr.iteration.grouped.input", false)) {
+			job.setInputFormatClass(OnlineGroupInputFormat.class);
+			job.setMapperClass(OnlineGroupMapper.class);
+		} else {
+			job.setInputFormatClass(SequenceFileInputFormat.class);
+			job.setMapperClass(OnlineFeatureMapper.class);
+		}
+		job.setOutputFormatClass(SequenceFileOutputFormat.class);
+
+		job.setMapOutputKeyClass(Text.class);
+		job.setMapOutputValueClass(OnlineVectorWritable.class);
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(ListWritable.class);
+
+		job.setReducerClass(OnlineReservoirReducer.class);
+		job.setNumReduceTasks(partitions);
+
+		HadoopUtil.delete(conf, output);
+		HadoopUtil.delete(conf, dirty);
+		boolean succeeded = job.waitForCompletion(true);
+		if (!succeeded) {
+			throw new IllegalStateException("Job:Merge reservoir,  Failed!");
+		}
+		Counter counter = job.getCounters().findCounter(
+				"org.apache.hadoop.mapred.Task$Counter",
+				"REDUCE_INPUT_GROUPS");
+		long dirtyKeys = counter.getValue();
+		LOG.info("{} keys with new events over {} reservoir partitions",
+				dirtyKeys, partitions);
+		return dirtyKeys;
+	}
+
+	/**
+	 * Makes output the reservoir, once the dirty keys are retrained.
+	 */
+	public static void commit(Path reservoir, Path output, Path dirty,
+			Configuration conf) throws IOException {
+		FileSystem fs = reservoir.getFileSystem(conf);
+		fs.delete(dirty, true);
+		fs.delete(reservoir, true);
+		if (!fs.rename(output, reservoir)) {
+			throw new IOException("failed to rename " + output + " to "
+					+ reservoir);
+		}
+	}
+
+	static String partitionName(int partition) {
+		return String.format("part-r-%05d", partition);
+	}
+}
@@ -0,0 +1,116 @@
+package io.izenecloud.larser.feature.online;
+
+import io.izenecloud.larser.feature.OnlineVectorWritable;
+import io.izenecloud.lr.ListWritable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Reducer;
+
+/**
+ * Merges the new events of the keys of one partition into the reservoir of
+ * recent samples of that partition. The old partition is streamed along
+ * the sorted keys: keys without new events are copied as they are, a key
+ * with new events keeps its newest samples, at most lr.reservoir.size,
+ * and is also written to the dirty file of this task for retraining.
+ */
+public class OnlineReservoirReducer extends
+		Reducer<Text, OnlineVectorWritable, Text, ListWritable> {
+	private int size;
+	private SequenceFile.Reader reservoir;
+	private Text storedKey;
+	private ListWritable storedValue;
+	private SequenceFile.Writer dirty;
+
+	protected void setup(Context context) throws IOException,
+			InterruptedException {
+		Configuration conf = context.getConfiguration();
+		size = conf.getInt("lr.reservoir.size",
+				OnlineReservoirDriver.DEFAULT_RESERVOIR_SIZE);
+		int partition = context.getTaskAttemptID().getTaskID().getId();
+		String name = OnlineReservoirDriver.partitionName(partition);
+
+		Path reservoirPath = new Path(conf.get("lr.reservoir.location"), name);
+		FileSystem fs = reservoirPath.getFileSystem(conf);
+		if (fs.exists(reservoirPath)) {
+			reservoir = new SequenceFile.Reader(fs, reservoirPath, conf);
+			nextStored();
+		}
+		Path dirtyPath = new Path(conf.get("lr.reservoir.dirty.location"),
+				name);
+		dirty = SequenceFile.createWriter(fs, conf, dirtyPath, Text.class,
+				ListWritable.class);
+	}
+
+	protected void reduce(Text key, Iterable<OnlineVectorWritable> values,
+			Context context) throws IOException, InterruptedException {
+		while (null != storedKey && storedKey.compareTo(key) < 0) {
+			context.write(storedKey, storedValue);
+			nextStored();
+		}
+		List<Writable> stored = null;
+		if (null != storedKey && storedKey.equals(key)) {
+			stored = storedValue.get();
+			nextStored();
+		}
+
+		// reservoir sampling of the new events, should there be more than
+		// the reservoir holds
+		List<Writable> fresh = new ArrayList<Writable>();
+		Random random = new Random(key.hashCode());
+		int seen = 0;
+		for (OnlineVectorWritable value : values) {
+			// the framework reuses value, its sample is read anew each time
+			OnlineVectorWritable sample = new OnlineVectorWritable(
+					value.getOffset(), value.getOction(), value.getSample());
+			if (fresh.size() < size) {
+				fresh.add(sample);
+			} else {
+				int i = random.nextInt(seen + 1);
+				if (i < size) {
+					fresh.set(i, sample);
+				}
+			}
+			seen++;
+		}
+
+		// the newest stored samples are at the end
+		List<Writable> samples = new ArrayList<Writable>(size);
+		if (null != stored) {
+			int keep = Math.min(stored.size(), size - fresh.size());
+			samples.addAll(stored.subList(stored.size() - keep, stored.size()));
+		}
+		samples.addAll(fresh);
+		ListWritable reservoirValue = new ListWritable(samples);
+		context.write(key, reservoirValue);
+		dirty.append(key, reservoirValue);
+	}
+
+	protected void cleanup(Context context) throws IOException,
+			InterruptedException {
+		while (null != storedKey) {
+			context.write(storedKey, storedValue);
+			nextStored();
+		}
+		dirty.close();
+	}
+
+	private void nextStored() throws IOException {
+		storedKey = new Text();
+		storedValue = new ListWritable();
+		if (!reservoir.next(storedKey, storedValue)) {
+			reservoir.close();
+			storedKey = null;
+			storedValue = null;
+		}
+	}
+}
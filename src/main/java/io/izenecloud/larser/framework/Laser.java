@@ -116,6 +116,31 @@ public class Laser {
 		Path messageOutput = Configuration.getInstance().getMetaqOutput(
 				collection);
 		org.apache.hadoop.conf.Configuration conf = new org.apache.hadoop.conf.Configuration();
+		Boolean onlineGrouped = Configuration.getInstance().onlineGrouped(
+				collection);
+		if (null != onlineGrouped) {
+			conf.setBoolean("laser.online.grouped", onlineGrouped);
+		}
+		Integer groupedBufferMb = Configuration.getInstance()
+				.getOnlineGroupedBufferMb(collection);
+		if (null != groupedBufferMb) {
+			conf.setLong("laser.online.grouped.buffer.mb", groupedBufferMb);
+		}
+		Integer consumerPartitions = Configuration.getInstance()
+				.getConsumerPartitions(collection);
+		if (null != consumerPartitions) {
+			conf.setInt("laser.consumer.partitions", consumerPartitions);
+		}
+		Integer quadraticBuckets = Configuration.getInstance()
+				.getQuadraticHashBuckets(collection);
+		if (null != quadraticBuckets) {
+			conf.setInt("laser.offline.quadratic.buckets", quadraticBuckets);
+		}
+		Integer pollSeconds = Configuration.getInstance()
+				.getOfflineModelPollSeconds(collection);
+		if (null != pollSeconds) {
+			conf.setLong("laser.offline.model.poll.seconds", pollSeconds);
+		}
 		FileSystem fs = messageOutput.getFileSystem(conf);
 		LaserMessageConsumer consumer = null;
 
@@ -5,20 +5,23 @@ import io.izenecloud.admm.AdmmOptimizerDriver;
 import io.izenecloud.conf.Configuration;
 import io.izenecloud.couchbase.CouchbaseConfig;
 import io.izenecloud.larser.feature.LaserMessageConsumer;
+import io.izenecloud.larser.feature.QuadraticWeights;
 import io.izenecloud.larser.offline.precompute.Compute;
 import io.izenecloud.larser.offline.topn.LaserOfflineResultWriter;
 import io.izenecloud.larser.offline.topn.LaserOfflineTopNDriver;
+import io.izenecloud.larser.offline.topn.LaserOfflineWarmStart;
 import io.izenecloud.msgpack.MsgpackClient;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.mahout.common.HadoopUtil;
-import org.apache.mahout.math.Matrix;
 import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.Vector.Element;
 import org.quartz.Job;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
@@ -42,8 +45,18 @@ public class LaserOfflineTrainTask implements Job {
 				.getMaxIteration(collection);
 		final Float regularizationFactor = Configuration.getInstance()
 				.getRegularizationFactor(collection);
+		final Float l1RegularizationFactor = Configuration.getInstance()
+				.getL1RegularizationFactor(collection);
 		final Boolean addIntercept = Configuration.getInstance().addIntercept(
 				collection);
+		final Integer numThreads = Configuration.getInstance()
+				.getOfflineNumThreads(collection);
+		final String engine = Configuration.getInstance().getOfflineEngine(
+				collection);
+		final Boolean sparseConsensus = Configuration.getInstance()
+				.sparseConsensus(collection);
+		final Boolean warmStart = Configuration.getInstance().warmStart(
+				collection);
 		final org.apache.hadoop.conf.Configuration conf = new org.apache.hadoop.conf.Configuration();
 		FileSystem fs = null;
 		try {
@@ -53,6 +66,19 @@ public class LaserOfflineTrainTask implements Job {
 		}
 
 		conf.set("mapred.job.queue.name", "sf1");
+		if (null != numThreads) {
+			conf.setInt("admm.iteration.num.threads", numThreads);
+		}
+		if (null != engine) {
+			conf.set("admm.optimizer.engine", engine);
+		}
+		if (null != l1RegularizationFactor) {
+			conf.setFloat("admm.l1.factor", l1RegularizationFactor);
+		}
+		if (null != sparseConsensus) {
+			conf.setBoolean("admm.iteration.sparse.consensus",
+					sparseConsensus);
+		}
 		conf.set("com.b5m.laser.collection", collection);
 		conf.set("com.b5m.laser.msgpack.host", Configuration.getInstance()
 				.getMsgpackAddress(collection));
@@ -73,6 +99,16 @@ public class LaserOfflineTrainTask implements Job {
 					.get("com.b5m.laser.message.consumer");
 
 			Path admmOutput = new Path(outputPath, "ADMM");
+			if (null != warmStart && warmStart) {
+				Path warmStartPath = new LaserOfflineWarmStart().write(
+						collection, fs, new Path(admmOutput,
+								AdmmOptimizerDriver.FINAL_MODEL), new Path(
+								outputPath, "WARM_START"));
+				if (null != warmStartPath) {
+					conf.set("admm.warm.start.location",
+							warmStartPath.toString());
+				}
+			}
 			Path input = consumeTask.nextOfflinePath();
 			AdmmOptimizerDriver.run(input, admmOutput, regularizationFactor,
 					addIntercept, null, iterationsMaximum, conf);
@@ -81,6 +117,7 @@ public class LaserOfflineTrainTask implements Job {
 			LaserOfflineResultWriter writer = new LaserOfflineResultWriter();
 			writer.write(collection, fs, new Path(admmOutput,
 					AdmmOptimizerDriver.FINAL_MODEL));
+			consumeTask.loadOfflineMode();
 			if (consumeTask.modelType().equalsIgnoreCase("per-user")) {
 				LOG.info("calculating offline topn clusters for each user, write results to delivery");
 				LaserOfflineTopNDriver.run(collection, Configuration
@@ -108,7 +145,8 @@ public class LaserOfflineTrainTask implements Job {
 			throws Exception {
 		Vector alpha = readVector(new Path(model, "alpha"), fs, conf);
 		Vector beta = readVector(new Path(model, "beta"), fs, conf);
-		Matrix A = readMatrix(new Path(model, "A"), fs, conf);
+		QuadraticWeights A = QuadraticWeights.read(model, alpha.size(),
+				beta.size(), fs, conf);
 
 		Object[] req = new Object[3];
 		List<Float> alpha1 = new ArrayList<Float>(alpha.size());
@@ -124,12 +162,19 @@ public class LaserOfflineTrainTask implements Job {
 		}
 		req[1] = beta1;
 
-		List<Float> conjunction = new ArrayList<Float>(A.numRows()
-				* A.numCols());
+		// delivery takes A dense, row by row
+		List<Float> conjunction = new ArrayList<Float>(Collections.nCopies(
+				A.numRows() * A.numCols(), 0.0f));
 		for (int row = 0; row < A.numRows(); row++) {
-			Vector vec = A.viewRow(row);
-			for (int col = 0; col < A.numCols(); col++) {
-				conjunction.add((float) vec.get(col));
+			if (A.isHashed()) {
+				for (int col = 0; col < A.numCols(); col++) {
+					conjunction.set(row * A.numCols() + col,
+							(float) A.get(row, col));
+				}
+				continue;
+			}
+			for (Element e : A.getMatrix().viewRow(row).nonZeroes()) {
+				conjunction.set(row * A.numCols() + e.index(), (float) e.get());
 			}
 		}
 		req[2] = conjunction;
@@ -30,9 +30,24 @@ public class LaserOnlineTrainTask implements Job {
 					.getRegularizationFactor(collection);
 			final Boolean addIntercept = Configuration.getInstance()
 					.addIntercept(collection);
+			final Integer numThreads = Configuration.getInstance()
+					.getOnlineNumThreads(collection);
+			final Boolean incremental = Configuration.getInstance()
+					.onlineIncremental(collection);
+			final Integer reservoirSize = Configuration.getInstance()
+					.getOnlineReservoirSize(collection);
 			final org.apache.hadoop.conf.Configuration conf = new org.apache.hadoop.conf.Configuration();
 			
 			conf.set("mapred.job.queue.name", "sf1");
+			if (null != numThreads) {
+				conf.setInt("lr.iteration.num.threads", numThreads);
+			}
+			if (null != incremental) {
+				conf.setBoolean("lr.iteration.incremental", incremental);
+			}
+			if (null != reservoirSize) {
+				conf.setInt("lr.reservoir.size", reservoirSize);
+			}
 			conf.set("com.b5m.laser.collection", collection);
 			conf.set("com.b5m.laser.msgpack.host", Configuration.getInstance()
 					.getMsgpackAddress(collection));
@@ -51,6 +66,8 @@ public class LaserOnlineTrainTask implements Job {
 					.getJobDetail().getJobDataMap()
 					.get("com.b5m.laser.message.consumer");
 
+			conf.setBoolean("lr.iteration.grouped.input",
+					consumeTask.isOnlineGrouped());
 			Path signalPath = consumeTask.nextOnlinePath();
 			LOG.info(
 					"Retraining Laser's Online Model, results is flushed to {}",
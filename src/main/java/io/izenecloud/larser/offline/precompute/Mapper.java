@@ -1,8 +1,9 @@
 package io.izenecloud.larser.offline.precompute;
 
-import static io.izenecloud.HDFSHelper.readMatrix;
 import static io.izenecloud.HDFSHelper.readVector;
 
+import io.izenecloud.larser.feature.QuadraticWeights;
+
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -10,14 +11,13 @@ import java.util.List;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.mahout.math.Matrix;
 import org.apache.mahout.math.SequentialAccessSparseVector;
 import org.apache.mahout.math.Vector;
 
 public class Mapper extends
 		org.apache.hadoop.mapreduce.Mapper<Long, AdFeature, Long, Result> {
 	private Vector beta = null;
-	private Matrix A = null;
+	private QuadraticWeights A = null;
 	private Vector advec = null;
 	private List<Float> AStable = null;
 
@@ -28,7 +28,9 @@ public class Mapper extends
 		Path offlinePath = new Path(offlineModel);
 		FileSystem fs = offlinePath.getFileSystem(conf);
 		beta = readVector(new Path(offlinePath, "beta"), fs, conf);
-		A = readMatrix(new Path(offlinePath, "A"), fs, conf);
+		Vector alpha = readVector(new Path(offlinePath, "alpha"), fs, conf);
+		A = QuadraticWeights.read(offlinePath, alpha.size(), beta.size(), fs,
+				conf);
 		advec = new SequentialAccessSparseVector(A.numCols());
 		AStable = new ArrayList<Float>(A.numRows());
 	}
@@ -45,7 +47,7 @@ public class Mapper extends
 			advec.setQuick(index, val);
 		}
 		for (int row = 0; row < A.numRows(); row++) {
-			AStable.add((float) A.viewRow(row).dot(advec));
+			AStable.add((float) A.rowDot(row, advec));
 		}
 		//System.gc();
 		context.write(new Long(sv.k), new Result((float) betaStable, AStable));
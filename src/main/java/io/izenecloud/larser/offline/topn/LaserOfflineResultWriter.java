@@ -3,20 +3,34 @@ package io.izenecloud.larser.offline.topn;
 
 import io.izenecloud.admm.AdmmReducerContext;
 import io.izenecloud.admm.AdmmReducerContextWritable;
+import io.izenecloud.larser.feature.OfflineModelRegistry;
+import io.izenecloud.larser.feature.QuadraticFeatures;
+import io.izenecloud.larser.feature.QuadraticWeights;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.SequenceFile;
-import org.apache.mahout.math.DenseMatrix;
 import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.SparseRowMatrix;
 import org.apache.mahout.math.Vector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import static io.izenecloud.HDFSHelper.*;
 
+/**
+ * Splits the consensus z of the offline model into alpha, beta and the
+ * quadratic block A. A is stored as a sparse row matrix holding only the
+ * non-zero weights, which an l1 regularized model leaves few of. With
+ * hashed crosses every entry of A is one of the bucket weights, which are
+ * stored instead, see {@link QuadraticWeights}.
+ */
 public class LaserOfflineResultWriter {
+	private static final Logger LOG = LoggerFactory
+			.getLogger(LaserOfflineResultWriter.class);
 
 	public void write(String collection, FileSystem fs,
 			Path hdfsFilePath) throws Exception {
@@ -28,6 +42,7 @@ public class LaserOfflineResultWriter {
 				.getUserFeatureDimension(collection);
 		int adfDimension = io.izenecloud.conf.Configuration.getInstance()
 				.getItemFeatureDimension(collection);
+		QuadraticFeatures features = QuadraticFeatures.of(collection);
 		Configuration conf = new Configuration();
 		SequenceFile.Reader reader = new SequenceFile.Reader(fs, hdfsFilePath,
 				conf);
@@ -48,16 +63,43 @@ public class LaserOfflineResultWriter {
 		for (int i = ufDimension; i < ufDimension + adfDimension; i++) {
 			beta.set(i - ufDimension, z[i]);
 		}
-		Matrix A = new DenseMatrix(ufDimension, adfDimension);
-		for (int row = 0; row < A.numRows(); row++) {
-			Vector v = A.viewRow(row);
-			for (int col = 0; col < A.numCols(); col++) {
-				v.set(col, z[row * adfDimension + col + ufDimension
-						+ adfDimension]);
-			}
-		}
 		writeVector(alpha, new Path(finalOutputPath, "alpha"), fs, conf);
 		writeVector(beta, new Path(finalOutputPath, "beta"), fs, conf);
-		writeMatrix(A, new Path(finalOutputPath, "A"), fs, conf);
+		Path matrixPath = new Path(finalOutputPath, QuadraticWeights.MATRIX);
+		Path bucketsPath = new Path(finalOutputPath, QuadraticWeights.BUCKETS);
+		if (features.isHashed()) {
+			// every entry of A is a bucket weight, the buckets are kept
+			int offset = ufDimension + adfDimension;
+			Vector buckets = new DenseVector(features.getCrossWidth());
+			for (int i = 0; i < buckets.size(); i++) {
+				buckets.set(i, z[offset + i]);
+			}
+			LOG.info("{}: {} hashed quadratic weights", collection,
+					buckets.size());
+			writeVector(buckets, bucketsPath, fs, conf);
+			fs.delete(matrixPath, false);
+		} else {
+			// sequential rows, filled in column order and read by dot
+			// products
+			Matrix A = new SparseRowMatrix(ufDimension, adfDimension, false);
+			long nonZeros = 0;
+			for (int row = 0; row < A.numRows(); row++) {
+				for (int col = 0; col < A.numCols(); col++) {
+					double weight = z[features.crossIndex(row, col)];
+					if (0.0 != weight) {
+						A.setQuick(row, col, weight);
+						nonZeros++;
+					}
+				}
+			}
+			LOG.info("{}: {} of {} quadratic weights are non-zero",
+					new Object[] { collection, nonZeros,
+							(long) ufDimension * adfDimension });
+			writeMatrix(A, matrixPath, fs, conf);
+			fs.delete(bucketsPath, false);
+		}
+		// the consumers reload the model once the marker is touched
+		fs.create(new Path(finalOutputPath, OfflineModelRegistry.MARKER), true)
+				.close();
 	}
 }
@@ -1,5 +1,6 @@
 package io.izenecloud.larser.offline.topn;
 
+import io.izenecloud.larser.feature.QuadraticWeights;
 import io.izenecloud.larser.feature.UserProfile;
 import io.izenecloud.larser.feature.UserProfileMap;
 import io.izenecloud.msgpack.AdClusteringsInfo;
@@ -19,11 +20,9 @@ import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.mahout.math.DenseVector;
-import org.apache.mahout.math.Matrix;
 import org.apache.mahout.math.SequentialAccessSparseVector;
 import org.apache.mahout.math.Vector;
 
-import static io.izenecloud.HDFSHelper.readMatrix;
 import static io.izenecloud.HDFSHelper.readVector;
 
 public class LaserOfflineTopNMapper extends
@@ -48,7 +47,8 @@ public class LaserOfflineTopNMapper extends
 		// TODO getLocalCacheFiles
 		this.alpha = readVector(new Path(offlinePath, "alpha"), fs, conf);
 		Vector beta = readVector(new Path(offlinePath, "beta"), fs, conf);
-		Matrix A = readMatrix(new Path(offlinePath, "A"), fs, conf);
+		QuadraticWeights A = QuadraticWeights.read(offlinePath,
+				alpha.size(), beta.size(), fs, conf);
 
 		AC = new LinkedList<IntVector>();
 		CBeta = new LinkedList<Double>();
@@ -74,8 +74,7 @@ public class LaserOfflineTopNMapper extends
 			// A * Cj
 			Vector acj = new DenseVector(A.numRows());
 			for (int row = 0; row < A.numRows(); row++) {
-				Vector ai = A.viewRow(row);
-				acj.set(row, cluster.getClusteringInfo().dot(ai));
+				acj.set(row, A.rowDot(row, cluster.getClusteringInfo()));
 			}
 			AC.add(new IntVector(cluster.getClusteringId(), acj));
 
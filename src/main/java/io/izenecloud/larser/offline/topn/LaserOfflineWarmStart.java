@@ -0,0 +1,120 @@
+package io.izenecloud.larser.offline.topn;
+
+import io.izenecloud.admm.AdmmReducerContext;
+import io.izenecloud.larser.feature.QuadraticFeatures;
+import io.izenecloud.larser.feature.QuadraticWeights;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.Vector.Element;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static io.izenecloud.HDFSHelper.*;
+import static io.izenecloud.admm.AdmmIterationHelper.*;
+
+/**
+ * Builds the starting point of the next offline training from the last
+ * model. The FINAL_MODEL of the previous run is taken as it is while the
+ * feature dimensions are unchanged; otherwise z is rebuilt from the alpha,
+ * beta and A written by {@link LaserOfflineResultWriter}, placing every
+ * weight at its index in the current layout and starting new features at
+ * zero. Hashed weights of the current layout are taken bucket by bucket.
+ */
+public class LaserOfflineWarmStart {
+	private static final Logger LOG = LoggerFactory
+			.getLogger(LaserOfflineWarmStart.class);
+
+	/**
+	 * Writes the starting z to output and returns it, or returns null when
+	 * there is no previous model.
+	 */
+	public Path write(String collection, FileSystem fs, Path finalModel,
+			Path output) throws Exception {
+		int ufDimension = io.izenecloud.conf.Configuration.getInstance()
+				.getUserFeatureDimension(collection);
+		int adfDimension = io.izenecloud.conf.Configuration.getInstance()
+				.getItemFeatureDimension(collection);
+		QuadraticFeatures features = QuadraticFeatures.of(collection);
+		int dimension = features.getNumFeatures();
+		Configuration conf = new Configuration();
+
+		if (fs.exists(finalModel)) {
+			AdmmReducerContext previous = null;
+			try {
+				previous = readAdmmReducerContext(finalModel, fs, conf);
+			} catch (IOException e) {
+				// rebuilt from alpha, beta and A below
+				LOG.info("unreadable {}, {}", finalModel, e.getMessage());
+			}
+			if (null != previous && null != previous.getZUpdated()
+					&& previous.getZUpdated().length == dimension) {
+				LOG.info("warm start {} from {}", collection, finalModel);
+				writeAdmmReducerContext(previous, output, fs, conf);
+				return output;
+			}
+		}
+
+		Path model = io.izenecloud.conf.Configuration.getInstance()
+				.getLaserOfflineOutput(collection);
+		Path alphaPath = new Path(model, "alpha");
+		Path betaPath = new Path(model, "beta");
+		if (!fs.exists(alphaPath) || !fs.exists(betaPath)
+				|| !QuadraticWeights.exists(model, fs)) {
+			LOG.info("no previous offline model for {}", collection);
+			return null;
+		}
+		Vector alpha = readVector(alphaPath, fs, conf);
+		Vector beta = readVector(betaPath, fs, conf);
+		QuadraticWeights A = QuadraticWeights.read(model, alpha.size(),
+				beta.size(), fs, conf);
+		LOG.info("warm start {} from alpha/beta/A of {} x {}", new Object[] {
+				collection, alpha.size(), beta.size() });
+
+		double[] z = new double[dimension];
+		int rows = Math.min(alpha.size(), ufDimension);
+		int cols = Math.min(beta.size(), adfDimension);
+		for (int i = 0; i < rows; i++) {
+			z[i] = alpha.get(i);
+		}
+		for (int i = 0; i < cols; i++) {
+			z[ufDimension + i] = beta.get(i);
+		}
+		if (A.isHashed() && features.isHashed()
+				&& A.numRows() == ufDimension && A.numCols() == adfDimension
+				&& A.getBuckets().length == features.getCrossWidth()) {
+			// the same buckets
+			System.arraycopy(A.getBuckets(), 0, z, ufDimension + adfDimension,
+					A.getBuckets().length);
+		} else if (A.isHashed()) {
+			for (int row = 0; row < rows; row++) {
+				for (int col = 0; col < cols; col++) {
+					double weight = A.get(row, col);
+					if (0.0 != weight) {
+						z[features.crossIndex(row, col)] = features.crossSign(
+								row, col) * weight;
+					}
+				}
+			}
+		} else {
+			Matrix matrix = A.getMatrix();
+			int numRows = Math.min(matrix.numRows(), ufDimension);
+			for (int row = 0; row < numRows; row++) {
+				for (Element e : matrix.viewRow(row).nonZeroes()) {
+					if (e.index() < adfDimension) {
+						z[features.crossIndex(row, e.index())] = features
+								.crossSign(row, e.index()) * e.get();
+					}
+				}
+			}
+		}
+		writeAdmmReducerContext(new AdmmReducerContext(null, null, null, z,
+				0.0, 0.0, 0.0, 0L), output, fs, conf);
+		return output;
+	}
+}
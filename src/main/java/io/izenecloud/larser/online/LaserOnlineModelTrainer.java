@@ -1,6 +1,7 @@
 package io.izenecloud.larser.online;
 
 import io.izenecloud.larser.feature.online.OnlineFeatureDriver;
+import io.izenecloud.larser.feature.online.OnlineReservoirDriver;
 import io.izenecloud.lr.LrIterationDriver;
 
 import java.io.IOException;
@@ -18,6 +19,17 @@ public class LaserOnlineModelTrainer {
 	public static int run(String collection, Path input, Path output,
 			Float regularizationFactor, Boolean addIntercept, Configuration conf)
 			throws ClassNotFoundException, IOException, InterruptedException {
+		if (conf.getBoolean("lr.iteration.incremental", false)) {
+			return runIncremental(collection, input, output,
+					regularizationFactor, addIntercept, conf);
+		}
+		if (conf.getBoolean("lr.iteration.grouped.input", false)) {
+			// the consumer already grouped the samples by identifier
+			conf.setInt("mapred.task.timeout", 6000000);
+			LrIterationDriver.run(collection, input, new Path(output, "LR"),
+					regularizationFactor, addIntercept, conf);
+			return 0;
+		}
 		Path groupByIdendifier = new Path(output, "groupByIdendifier");
 		try {
 			if (0 == OnlineFeatureDriver.run(collection, input, groupByIdendifier, conf)) {
@@ -36,4 +48,35 @@ public class LaserOnlineModelTrainer {
 		HadoopUtil.delete(conf, groupByIdendifier);
 		return 0;
 	}
+
+	/**
+	 * Merges the new events into the reservoir of recent samples per key
+	 * and retrains only the keys that received events, on their reservoir.
+	 */
+	private static int runIncremental(String collection, Path input,
+			Path output, Float regularizationFactor, Boolean addIntercept,
+			Configuration conf) throws ClassNotFoundException, IOException,
+			InterruptedException {
+		Path reservoir = new Path(output, "RESERVOIR");
+		Path reservoirNext = new Path(output, "RESERVOIR_NEXT");
+		Path dirty = new Path(output, "DIRTY");
+		long dirtyKeys;
+		try {
+			dirtyKeys = OnlineReservoirDriver.run(collection, input,
+					reservoir, reservoirNext, dirty, conf);
+		} catch (IllegalStateException e) {
+			LOG.error("the online reservoir merge failed, " + e.getMessage());
+			throw e;
+		}
+		// the grouped format is the one of the consumer output, which only
+		// the merge reads; DIRTY is a SequenceFile of ListWritable
+		conf.setBoolean("lr.iteration.grouped.input", false);
+		if (0 != dirtyKeys) {
+			conf.setInt("mapred.task.timeout", 6000000);
+			LrIterationDriver.run(collection, dirty, new Path(output, "LR"),
+					regularizationFactor, addIntercept, conf);
+		}
+		OnlineReservoirDriver.commit(reservoir, reservoirNext, dirty, conf);
+		return 0;
+	}
 }
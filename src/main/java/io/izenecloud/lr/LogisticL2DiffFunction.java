@@ -1,11 +1,13 @@
 package io.izenecloud.lr;
 
+import io.izenecloud.admm.CachingDiffFunction;
+
+import java.util.Arrays;
+
 import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.Vector.Element;
 
-import edu.stanford.nlp.optimization.DiffFunction;
-
-public class LogisticL2DiffFunction implements DiffFunction {
+public class LogisticL2DiffFunction extends CachingDiffFunction {
 	private final Vector[] a;
 	private final double[] b;
 	private final double[] knownOffset;
@@ -23,18 +25,26 @@ public class LogisticL2DiffFunction implements DiffFunction {
 		this.lambda = lambda * 2;
 	}
 
-	public double valueAt(double[] x) {
+	public int domainDimension() {
+		return n;
+	}
+
+	protected double calculate(double[] x, double[] out) {
+		// value: 1+ exp(-b'AX)
+		// gradient: -A'b / (1 + exp(b'Ax) + 2 lambda *x
 		double result = 0.0;
-		// 1+ exp(-b'AX)
 		for (int i = 0; i < this.m; i++) {
 			Vector v = this.a[i];
 			double ax = 0.0;
 			for (Element e : v.nonZeroes()) {
 				ax += e.get() * x[e.index()];
 			}
-			double axb = (ax + knownOffset[i]) * b[i];
-			double thisLoopResult = Math.log(1.0 + Math.exp(-axb));
-			result += thisLoopResult;
+			double expAxb = Math.exp(this.b[i] * (ax + knownOffset[i]));
+			result += Math.log(1.0 + 1.0 / expAxb);
+			double thisRowMultiplier = this.b[i] / (1.0 + expAxb);
+			for (Element e : v.nonZeroes()) {
+				out[e.index()] += -e.get() * thisRowMultiplier;
+			}
 		}
 		result /= m;
 
@@ -42,42 +52,63 @@ public class LogisticL2DiffFunction implements DiffFunction {
 		double penalty = 0.0;
 		for (int i = 0; i < n; i++) {
 			penalty += x[i] * x[i];
+			out[i] /= this.m;
+			out[i] += this.lambda * x[i];
 		}
 
 		result += penalty * this.lambda / 2;
 		return result;
 	}
 
-	public int domainDimension() {
-		return n;
-	}
-
-	public double[] derivativeAt(double[] x) {
-		// -A'b / (1 + exp(b'Ax) + 2 lambda *x
-		double[] out = new double[n];
-		for (int vectorIndex = 0; vectorIndex < x.length; vectorIndex++) {
-			out[vectorIndex] = 0.0; // reset result values to 0.0
+	/**
+	 * Writes the Hessian at x into the leading n x n block of hessian:
+	 * 1 / m * sum b_i^2 * sigma_i * (1 - sigma_i) * a_i a_i' + 2 lambda * I,
+	 * sigma_i being the logistic function of b_i * (a_i x + offset_i).
+	 */
+	public void hessianAt(double[] x, double[][] hessian) {
+		for (int i = 0; i < n; i++) {
+			Arrays.fill(hessian[i], 0, n, 0.0);
 		}
-
 		for (int i = 0; i < this.m; i++) {
 			Vector v = this.a[i];
 			double ax = 0.0;
 			for (Element e : v.nonZeroes()) {
 				ax += e.get() * x[e.index()];
 			}
-			double thisRowMultiplier = this.b[i]
-					/ (1.0 + Math.exp(this.b[i] * (ax + knownOffset[i])));
+			double expAxb = Math.exp(this.b[i] * (ax + knownOffset[i]));
+			double weight = this.b[i] * this.b[i] * expAxb
+					/ ((1.0 + expAxb) * (1.0 + expAxb));
+			if (0.0 == weight || Double.isNaN(weight)) {
+				continue;
+			}
+			// the lower triangle only, mirrored below
 			for (Element e : v.nonZeroes()) {
-				out[e.index()] += -e.get() * thisRowMultiplier;
+				int row = e.index();
+				double ei = weight * e.get();
+				for (Element f : v.nonZeroes()) {
+					if (f.index() <= row) {
+						hessian[row][f.index()] += ei * f.get();
+					}
+				}
 			}
 		}
-
 		for (int i = 0; i < n; i++) {
-			out[i] /= this.m;
-			out[i] += this.lambda * x[i];
+			for (int j = 0; j < i; j++) {
+				hessian[i][j] /= this.m;
+				hessian[j][i] = hessian[i][j];
+			}
+			hessian[i][i] = hessian[i][i] / this.m + this.lambda;
 		}
-
-		return out;
 	}
 
+	/**
+	 * Number of non-zero features over all samples.
+	 */
+	public long numNonZeroes() {
+		long result = 0;
+		for (int i = 0; i < this.m; i++) {
+			result += this.a[i].getNumNonZeroElements();
+		}
+		return result;
+	}
 }
@@ -0,0 +1,10 @@
+package io.izenecloud.lr;
+
+/**
+ * Job counters of the online training: keys seeded from their stored
+ * model, and keys whose new model is too close to the stored one to be
+ * published.
+ */
+public enum LrIterationCounter {
+	WARM_STARTED, UNCHANGED
+}
@@ -25,6 +25,14 @@ public class LrIterationDriver {
 		}
 
 		conf.set("com.b5m.laser.msgpack.output.method", "update_online_model");
+		// the per key models published by this run are kept under output
+		// and seed the next run
+		boolean warmStart = conf.getBoolean("lr.iteration.warm.start", true);
+		if (warmStart) {
+			conf.set("lr.iteration.model.store", output.toString());
+			// every task owns one file of updates
+			conf.setBoolean("mapred.map.tasks.speculative.execution", false);
+		}
 
 		Job job = Job.getInstance(conf);
 		job.setJarByClass(LrIterationDriver.class);
@@ -36,8 +44,13 @@ public class LrIterationDriver {
 		job.setOutputKeyClass(String.class);
 		job.setOutputValueClass(LaserOnlineModel.class);
 
-		LrIterationInputFormat.setNumMapTasks(job, 120);
-		job.setInputFormatClass(LrIterationInputFormat.class);
+		if (conf.getBoolean("lr.iteration.grouped.input", false)) {
+			// written grouped by the consumer, one split per partition
+			job.setInputFormatClass(OnlineGroupInputFormat.class);
+		} else {
+			LrIterationInputFormat.setNumMapTasks(job, 120);
+			job.setInputFormatClass(LrIterationInputFormat.class);
+		}
 		job.setMapperClass(LrIterationMapper.class);
 		job.setNumReduceTasks(0);
 
@@ -45,6 +58,9 @@ public class LrIterationDriver {
 		if (!succeeded) {
 			throw new IllegalStateException("Job:logistic regression,  Failed!");
 		}
+		if (warmStart) {
+			OnlineModelStore.merge(output, conf);
+		}
 		return 0;
 	}
 }
@@ -1,24 +1,59 @@
 package io.izenecloud.lr;
 
+import io.izenecloud.admm.DoubleArrayWritable;
+import io.izenecloud.admm.Lbfgs;
 import io.izenecloud.larser.feature.OnlineVectorWritable;
 
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.Mapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import edu.stanford.nlp.optimization.QNMinimizer;
-
+/**
+ * Trains the online model of every key (user or ad) of the split. With
+ * lr.iteration.num.threads above 1, which defaults to the vcores of the
+ * container, the per key problems are solved by a pool of threads, each
+ * with its own minimizer, while the models are written in input order.
+ * Keys of few dimensions are solved by {@link NewtonSolver} when that is
+ * estimated to be cheaper, up to lr.iteration.newton.max.dimension.
+ *
+ * With lr.iteration.model.store set, every key starts from its model in
+ * that {@link OnlineModelStore}, and a model that moved by no more than
+ * lr.iteration.publish.threshold in any coordinate is not published again.
+ */
 public class LrIterationMapper extends
 		Mapper<Text, ListWritable, String, LaserOnlineModel> {
+	private static final Logger LOG = LoggerFactory
+			.getLogger(LrIterationMapper.class);
 	private static final double DEFAULT_REGULARIZATION_FACTOR = 0.000001f;
+	// keys in flight per solver thread
+	private static final int KEYS_PER_THREAD = 4;
+	private static final float DEFAULT_PUBLISH_THRESHOLD = 1e-4f;
 
 	private double regularizationFactor;
-	private QNMinimizer lbfgs;
+	private ThreadLocal<Lbfgs> lbfgs;
+	private ThreadLocal<NewtonSolver> newton;
+	private int newtonMaxDimension;
+	private int numThreads;
+	private ExecutorService executor;
+	private OnlineModelStore store;
+	private SequenceFile.Writer updates;
+	private double publishThreshold;
 
 	protected void setup(Context context) throws IOException,
 			InterruptedException {
@@ -26,12 +61,163 @@ public class LrIterationMapper extends
 		regularizationFactor = conf.getDouble(
 				"lr.iteration.regulariztion.factor",
 				DEFAULT_REGULARIZATION_FACTOR);
-		lbfgs = new QNMinimizer();
-		lbfgs.setRobustOptions();
+		final double l1 = conf.getDouble("lr.iteration.l1.factor", 0.0);
+		lbfgs = new ThreadLocal<Lbfgs>() {
+			protected Lbfgs initialValue() {
+				Lbfgs minimizer = new Lbfgs();
+				minimizer.setL1(l1);
+				return minimizer;
+			}
+		};
+		newton = new ThreadLocal<NewtonSolver>() {
+			protected NewtonSolver initialValue() {
+				return new NewtonSolver();
+			}
+		};
+		// Newton has no l1 term
+		newtonMaxDimension = 0 == l1 ? conf.getInt(
+				"lr.iteration.newton.max.dimension",
+				NewtonSolver.DEFAULT_MAX_DIMENSION) : 0;
+		String storeLocation = conf.get("lr.iteration.model.store");
+		if (null != storeLocation) {
+			Path storePath = new Path(storeLocation);
+			store = OnlineModelStore.open(storePath, conf);
+			updates = OnlineModelStore.createUpdateWriter(storePath, context
+					.getTaskAttemptID().getTaskID(), conf);
+		}
+		publishThreshold = conf.getFloat("lr.iteration.publish.threshold",
+				DEFAULT_PUBLISH_THRESHOLD);
+		numThreads = conf.getInt("lr.iteration.num.threads",
+				conf.getInt("mapreduce.map.cpu.vcores", 1));
+		if (numThreads > 1) {
+			LOG.info("training keys on {} threads", numThreads);
+			executor = Executors.newFixedThreadPool(numThreads);
+		}
+	}
+
+	public void run(Context context) throws IOException, InterruptedException {
+		setup(context);
+		try {
+			if (null == executor) {
+				while (context.nextKeyValue()) {
+					map(context.getCurrentKey(), context.getCurrentValue(),
+							context);
+				}
+			} else {
+				runParallel(context);
+			}
+		} finally {
+			cleanup(context);
+		}
 	}
 
 	protected void map(Text key, ListWritable valueWritable, Context context)
 			throws IOException, InterruptedException {
+		String identifier = key.toString();
+		LrIterationMapContext mapContext = newMapContext(valueWritable);
+		double[] previous = warmStart(identifier, mapContext, context);
+		publish(identifier, previous, localMapperOptimization(mapContext)
+				.getX(), context);
+	}
+
+	protected void cleanup(Context context) throws IOException,
+			InterruptedException {
+		if (null != executor) {
+			executor.shutdownNow();
+		}
+		if (null != store) {
+			store.close();
+		}
+		if (null != updates) {
+			updates.close();
+		}
+	}
+
+	/**
+	 * Starts the key from its stored model, if there is one of the right
+	 * dimension, and returns that model.
+	 */
+	private double[] warmStart(String identifier,
+			LrIterationMapContext mapContext, Context context)
+			throws IOException {
+		if (null == store) {
+			return null;
+		}
+		double[] previous = store.get(identifier);
+		if (null == previous || previous.length != mapContext.getX().length) {
+			return null;
+		}
+		mapContext.setX(previous.clone());
+		context.getCounter(LrIterationCounter.WARM_STARTED).increment(1);
+		return previous;
+	}
+
+	private void publish(String identifier, double[] previous, double[] x,
+			Context context) throws IOException, InterruptedException {
+		if (null != previous && maxChange(previous, x) <= publishThreshold) {
+			context.getCounter(LrIterationCounter.UNCHANGED).increment(1);
+			return;
+		}
+		context.write(identifier, new LaserOnlineModel(x));
+		if (null != updates) {
+			updates.append(new Text(identifier), new DoubleArrayWritable(x,
+					true));
+		}
+	}
+
+	private static double maxChange(double[] previous, double[] x) {
+		double result = 0.0;
+		for (int i = 0; i < x.length; i++) {
+			result = Math.max(result, Math.abs(x[i] - previous[i]));
+		}
+		return result;
+	}
+
+	/**
+	 * Hands the keys to the pool, keeping at most KEYS_PER_THREAD of them
+	 * per thread in flight, and writes every model once the models of all
+	 * keys before it are written.
+	 */
+	private void runParallel(Context context) throws IOException,
+			InterruptedException {
+		int window = numThreads * KEYS_PER_THREAD;
+		Queue<String> keys = new LinkedList<String>();
+		Queue<double[]> previousModels = new LinkedList<double[]>();
+		Queue<Future<double[]>> models = new LinkedList<Future<double[]>>();
+		while (context.nextKeyValue()) {
+			String identifier = context.getCurrentKey().toString();
+			final LrIterationMapContext mapContext = newMapContext(context
+					.getCurrentValue());
+			keys.add(identifier);
+			// the store is read in key order by this thread only
+			previousModels.add(warmStart(identifier, mapContext, context));
+			models.add(executor.submit(new Callable<double[]>() {
+				public double[] call() {
+					return localMapperOptimization(mapContext).getX();
+				}
+			}));
+			if (models.size() >= window) {
+				writeFirst(keys, previousModels, models, context);
+			}
+		}
+		while (!models.isEmpty()) {
+			writeFirst(keys, previousModels, models, context);
+		}
+	}
+
+	private void writeFirst(Queue<String> keys, Queue<double[]> previousModels,
+			Queue<Future<double[]>> models, Context context)
+			throws IOException, InterruptedException {
+		double[] x;
+		try {
+			x = models.remove().get();
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+		publish(keys.remove(), previousModels.remove(), x, context);
+	}
+
+	private LrIterationMapContext newMapContext(ListWritable valueWritable) {
 		OnlineVectorWritable[] inputSplitData = new OnlineVectorWritable[valueWritable
 				.get().size()];
 
@@ -43,12 +229,7 @@ public class LrIterationMapper extends
 			inputSplitData[row] = v;
 			row++;
 		}
-		LrIterationMapContext mapContext = new LrIterationMapContext(
-				inputSplitData);
-		mapContext = localMapperOptimization(mapContext);
-
-		double[] x = mapContext.getX();
-		context.write(key.toString(), new LaserOnlineModel(x));
+		return new LrIterationMapContext(inputSplitData);
 	}
 
 	private LrIterationMapContext localMapperOptimization(
@@ -56,7 +237,15 @@ public class LrIterationMapper extends
 		LogisticL2DiffFunction logistic = new LogisticL2DiffFunction(
 				context.getA(), context.getB(), context.getKnowOffset(),
 				context.getX(), regularizationFactor);
-		double[] optimum = lbfgs.minimize(logistic, 1e-6, context.getX());
+		double[] optimum = null;
+		if (NewtonSolver.prefer(context.getB().length,
+				logistic.numNonZeroes(), logistic.domainDimension(),
+				newtonMaxDimension, Lbfgs.DEFAULT_MEMORY)) {
+			optimum = newton.get().minimize(logistic, 1e-6, context.getX());
+		}
+		if (null == optimum) {
+			optimum = lbfgs.get().minimize(logistic, 1e-6, context.getX());
+		}
 		context.setX(optimum);
 		return context;
 	}
@@ -0,0 +1,175 @@
+package io.izenecloud.lr;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Newton's method with a dense Cholesky factorization of the Hessian, for
+ * the per key problems of a few dimensions. It converges in a handful of
+ * iterations where L-BFGS takes tens, and for small n the n^3 / 6 of the
+ * factorization is cheaper than the setup of L-BFGS. Not thread safe: the
+ * n x n workspace is kept between calls.
+ */
+public class NewtonSolver {
+	private static final Logger LOG = LoggerFactory
+			.getLogger(NewtonSolver.class);
+	public static final int DEFAULT_MAX_DIMENSION = 32;
+	private static final int MAX_ITERATIONS = 50;
+	private static final double ARMIJO = 1e-4;
+	private static final int MAX_HALVINGS = 30;
+	// rough iteration counts of both methods, for the cost estimate
+	private static final int NEWTON_ITERATIONS = 8;
+	private static final int LBFGS_ITERATIONS = 50;
+
+	private int n = -1;
+	private double[][] hessian;
+	private double[] x;
+	private double[] g;
+	private double[] d;
+	private double[] xNew;
+
+	/**
+	 * Whether a problem of the given number of samples, non-zero features
+	 * and dimension is cheaper to solve by Newton than by L-BFGS with the
+	 * given memory. Every Newton iteration forms the Hessian at cost
+	 * sum_i nnz(a_i)^2 and factors it at n^3 / 6, every L-BFGS iteration
+	 * evaluates at cost nnz and updates its history at 4 * memory * n.
+	 */
+	public static boolean prefer(int samples, long nonZeros, int dimension,
+			int maxDimension, int memory) {
+		if (dimension > maxDimension || 0 == samples) {
+			return false;
+		}
+		double perSample = (double) nonZeros / samples;
+		double newton = NEWTON_ITERATIONS
+				* (nonZeros * perSample + Math.pow(dimension, 3) / 6);
+		double lbfgs = LBFGS_ITERATIONS
+				* (nonZeros + 4.0 * memory * dimension);
+		return newton <= lbfgs;
+	}
+
+	/**
+	 * Minimizes f from initial until the gradient is below tolerance
+	 * relative to the magnitude of x, as L-BFGS does. Returns a new array,
+	 * or null when the Hessian is not positive definite, for the caller to
+	 * fall back to L-BFGS.
+	 */
+	public double[] minimize(LogisticL2DiffFunction f, double tolerance,
+			double[] initial) {
+		allocate(initial.length);
+		System.arraycopy(initial, 0, x, 0, n);
+		double value = f.valueAt(x);
+		System.arraycopy(f.derivativeAt(x), 0, g, 0, n);
+
+		for (int k = 0; k < MAX_ITERATIONS; k++) {
+			if (norm(g) <= tolerance * Math.max(1.0, norm(x))) {
+				break;
+			}
+			f.hessianAt(x, hessian);
+			if (!cholesky(hessian, n)) {
+				LOG.debug("Hessian not positive definite at iteration {}", k);
+				return null;
+			}
+			// d = -H^-1 g
+			for (int i = 0; i < n; i++) {
+				d[i] = -g[i];
+			}
+			solve(hessian, n, d);
+
+			double descent = 0.0;
+			for (int i = 0; i < n; i++) {
+				descent += d[i] * g[i];
+			}
+			double step = 1.0;
+			double valueNew = Double.NaN;
+			int halvings = 0;
+			for (; halvings < MAX_HALVINGS; halvings++) {
+				for (int i = 0; i < n; i++) {
+					xNew[i] = x[i] + step * d[i];
+				}
+				valueNew = f.valueAt(xNew);
+				if (valueNew <= value + ARMIJO * step * descent) {
+					break;
+				}
+				step /= 2;
+			}
+			if (MAX_HALVINGS == halvings) {
+				break;
+			}
+			double[] t = x;
+			x = xNew;
+			xNew = t;
+			System.arraycopy(f.derivativeAt(x), 0, g, 0, n);
+			value = valueNew;
+		}
+		return Arrays.copyOf(x, n);
+	}
+
+	private void allocate(int dimension) {
+		if (dimension == n) {
+			return;
+		}
+		n = dimension;
+		hessian = new double[n][n];
+		x = new double[n];
+		g = new double[n];
+		d = new double[n];
+		xNew = new double[n];
+	}
+
+	/**
+	 * Factors the symmetric a = L L' in place, L taking the lower triangle.
+	 * Returns false when a is not positive definite.
+	 */
+	static boolean cholesky(double[][] a, int n) {
+		for (int j = 0; j < n; j++) {
+			double diagonal = a[j][j];
+			for (int k = 0; k < j; k++) {
+				diagonal -= a[j][k] * a[j][k];
+			}
+			if (diagonal <= 0.0 || Double.isNaN(diagonal)) {
+				return false;
+			}
+			diagonal = Math.sqrt(diagonal);
+			a[j][j] = diagonal;
+			for (int i = j + 1; i < n; i++) {
+				double sum = a[i][j];
+				for (int k = 0; k < j; k++) {
+					sum -= a[i][k] * a[j][k];
+				}
+				a[i][j] = sum / diagonal;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Solves L L' y = b in place of b by forward and back substitution.
+	 */
+	static void solve(double[][] l, int n, double[] b) {
+		for (int i = 0; i < n; i++) {
+			double sum = b[i];
+			for (int k = 0; k < i; k++) {
+				sum -= l[i][k] * b[k];
+			}
+			b[i] = sum / l[i][i];
+		}
+		for (int i = n - 1; i >= 0; i--) {
+			double sum = b[i];
+			for (int k = i + 1; k < n; k++) {
+				sum -= l[k][i] * b[k];
+			}
+			b[i] = sum / l[i][i];
+		}
+	}
+
+	private static double norm(double[] v) {
+		double result = 0.0;
+		for (int i = 0; i < v.length; i++) {
+			result += v[i] * v[i];
+		}
+		return Math.sqrt(result);
+	}
+}
@@ -0,0 +1,104 @@
+package io.izenecloud.lr;
+
+import io.izenecloud.larser.feature.OnlineGroupWriter;
+import io.izenecloud.larser.feature.OnlineVectorWritable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+/**
+ * Reads the partitions written by {@link OnlineGroupWriter} as one record
+ * of key and samples per group, in the form the online training reads
+ * from the group by identifier job. Every partition is one split.
+ */
+public class OnlineGroupInputFormat extends FileInputFormat<Text, ListWritable> {
+
+	@Override
+	protected boolean isSplitable(JobContext context, Path filename) {
+		// groups carry no sync marks
+		return false;
+	}
+
+	@Override
+	public RecordReader<Text, ListWritable> createRecordReader(
+			InputSplit split, TaskAttemptContext context) throws IOException,
+			InterruptedException {
+		return new OnlineGroupRecordReader();
+	}
+
+	static class OnlineGroupRecordReader extends
+			RecordReader<Text, ListWritable> {
+		private FSDataInputStream in;
+		private long length;
+		private Text key;
+		private ListWritable value;
+
+		@Override
+		public void initialize(InputSplit split, TaskAttemptContext context)
+				throws IOException, InterruptedException {
+			FileSplit fileSplit = (FileSplit) split;
+			Path path = fileSplit.getPath();
+			FileSystem fs = path.getFileSystem(context.getConfiguration());
+			in = fs.open(path);
+			length = fileSplit.getLength();
+		}
+
+		@Override
+		public boolean nextKeyValue() throws IOException, InterruptedException {
+			if (in.getPos() >= length) {
+				return false;
+			}
+			// the group length allows skipping, here the group is read
+			WritableUtils.readVInt(in);
+			key = new Text();
+			key.readFields(in);
+			int count = WritableUtils.readVInt(in);
+			List<Writable> samples = new ArrayList<Writable>(count);
+			for (int i = 0; i < count; i++) {
+				OnlineVectorWritable sample = new OnlineVectorWritable();
+				sample.readFields(in);
+				samples.add(sample);
+			}
+			value = new ListWritable(samples);
+			return true;
+		}
+
+		@Override
+		public Text getCurrentKey() throws IOException, InterruptedException {
+			return key;
+		}
+
+		@Override
+		public ListWritable getCurrentValue() throws IOException,
+				InterruptedException {
+			return value;
+		}
+
+		@Override
+		public float getProgress() throws IOException, InterruptedException {
+			return 0 == length ? 1.0f : Math.min(1.0f, in.getPos()
+					/ (float) length);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (null != in) {
+				in.close();
+			}
+		}
+	}
+}
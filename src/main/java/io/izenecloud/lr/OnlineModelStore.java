@@ -0,0 +1,207 @@
+package io.izenecloud.lr;
+
+import io.izenecloud.admm.DoubleArrayWritable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.TaskID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The last published model of every key of the online training, kept in
+ * a MapFile of key to x under root/MODEL. Every map task appends the
+ * models it publishes, in key order, to its own file under root/UPDATES;
+ * after the job {@link #merge(Path, Configuration)} folds them into a new
+ * MODEL.
+ */
+public class OnlineModelStore {
+	private static final Logger LOG = LoggerFactory
+			.getLogger(OnlineModelStore.class);
+	private static final String MODEL = "MODEL";
+	private static final String UPDATES = "UPDATES";
+	private static final String MERGING = "MERGING";
+
+	private final MapFile.Reader reader;
+	private final Text key = new Text();
+	private final DoubleArrayWritable value = new DoubleArrayWritable();
+
+	private OnlineModelStore(MapFile.Reader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Opens the models under root, or returns null when there are none yet.
+	 */
+	@SuppressWarnings("deprecation")
+	public static OnlineModelStore open(Path root, Configuration conf)
+			throws IOException {
+		FileSystem fs = root.getFileSystem(conf);
+		Path model = new Path(root, MODEL);
+		if (!fs.exists(model)) {
+			return null;
+		}
+		return new OnlineModelStore(new MapFile.Reader(fs, model.toString(),
+				conf));
+	}
+
+	/**
+	 * The stored x of the given key, or null. Lookups in key order are the
+	 * cheapest.
+	 */
+	public double[] get(String identifier) throws IOException {
+		key.set(identifier);
+		if (null == reader.get(key, value)) {
+			return null;
+		}
+		return Arrays.copyOf(value.get(), value.get().length);
+	}
+
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * Writer of the models published by the given task. A retried attempt
+	 * overwrites the file of the failed one.
+	 */
+	public static SequenceFile.Writer createUpdateWriter(Path root,
+			TaskID task, Configuration conf) throws IOException {
+		FileSystem fs = root.getFileSystem(conf);
+		Path path = new Path(new Path(root, UPDATES), "part-"
+				+ String.format("%05d", task.getId()));
+		return SequenceFile.createWriter(fs, conf, path, Text.class,
+				DoubleArrayWritable.class);
+	}
+
+	/**
+	 * Merges the updates into the models, an update replacing the stored
+	 * model of its key, and replaces MODEL with the result. Every update
+	 * file has to be sorted by key, which holds as the input of the online
+	 * training is the sorted output of the group by identifier; a file out
+	 * of order fails the merge and leaves MODEL and UPDATES as they were.
+	 */
+	@SuppressWarnings("deprecation")
+	public static void merge(Path root, Configuration conf) throws IOException {
+		FileSystem fs = root.getFileSystem(conf);
+		Path updates = new Path(root, UPDATES);
+		if (!fs.exists(updates)) {
+			return;
+		}
+		Path model = new Path(root, MODEL);
+		Path merging = new Path(root, MERGING);
+		fs.delete(merging, true);
+
+		PriorityQueue<Source> queue = new PriorityQueue<Source>(11,
+				new Comparator<Source>() {
+					public int compare(Source o1, Source o2) {
+						int result = o1.key.compareTo(o2.key);
+						return 0 != result ? result : o1.priority
+								- o2.priority;
+					}
+				});
+		// every source is closed however the merge ends
+		List<Source> sources = new ArrayList<Source>();
+		MapFile.Writer writer = null;
+		Text last = null;
+		long count = 0;
+		try {
+			FileStatus[] files = fs.listStatus(updates);
+			for (int i = 0; i < files.length; i++) {
+				Source source = new Source(files[i].getPath(),
+						new SequenceFile.Reader(fs, files[i].getPath(), conf), i);
+				sources.add(source);
+				if (source.next()) {
+					queue.add(source);
+				}
+			}
+			if (fs.exists(model)) {
+				Path data = new Path(model, MapFile.DATA_FILE_NAME);
+				Source source = new Source(data, new SequenceFile.Reader(fs,
+						data, conf), Integer.MAX_VALUE);
+				sources.add(source);
+				if (source.next()) {
+					queue.add(source);
+				}
+			}
+
+			writer = new MapFile.Writer(conf, fs, merging.toString(),
+					Text.class, DoubleArrayWritable.class);
+			while (!queue.isEmpty()) {
+				Source source = queue.poll();
+				// of equal keys the update comes first, of equal updates
+				// the one of the lowest task
+				if (null == last || !last.equals(source.key)) {
+					writer.append(source.key, new DoubleArrayWritable(
+							source.value.get(), true));
+					last = new Text(source.key);
+					count++;
+				}
+				if (source.next()) {
+					queue.add(source);
+				}
+			}
+		} finally {
+			if (null != writer) {
+				writer.close();
+			}
+			for (Source source : sources) {
+				source.close();
+			}
+		}
+		fs.delete(model, true);
+		fs.rename(merging, model);
+		fs.delete(updates, true);
+		LOG.info("{} models in {}", count, model);
+	}
+
+	private static class Source {
+		private final Path path;
+		private final SequenceFile.Reader reader;
+		private final int priority;
+		private final Text key = new Text();
+		private final Text previous = new Text();
+		private final DoubleArrayWritable value = new DoubleArrayWritable();
+		private boolean closed = false;
+
+		Source(Path path, SequenceFile.Reader reader, int priority) {
+			this.path = path;
+			this.reader = reader;
+			this.priority = priority;
+		}
+
+		boolean next() throws IOException {
+			previous.set(key);
+			if (reader.next(key, value)) {
+				// a key out of order would be merged in the wrong place
+				if (previous.getLength() > 0 && previous.compareTo(key) > 0) {
+					throw new IOException("models of " + path
+							+ " are not sorted, " + key + " after "
+							+ previous);
+				}
+				return true;
+			}
+			close();
+			return false;
+		}
+
+		void close() throws IOException {
+			if (!closed) {
+				closed = true;
+				reader.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package io.izenecloud.admm;
+
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class TestAdmmConsensus {
+	private static final int SPLITS = 7;
+	private static final int COLS = 30;
+	private static final double EPSILON = 1e-9;
+	private final Random random = new Random(11);
+
+	@Test
+	public void squaredDistanceSum() {
+		double[][] x = new double[SPLITS][COLS];
+		double[] xAverage = new double[COLS];
+		double xSquaredNorm = 0.0;
+		for (int split = 0; split < SPLITS; split++) {
+			for (int i = 0; i < COLS; i++) {
+				x[split][i] = random.nextGaussian();
+				xAverage[i] += x[split][i] / SPLITS;
+				xSquaredNorm += x[split][i] * x[split][i];
+			}
+		}
+
+		double expected = 0.0;
+		for (int split = 0; split < SPLITS; split++) {
+			for (int i = 0; i < COLS; i++) {
+				expected += Math.pow(x[split][i] - xAverage[i], 2);
+			}
+		}
+		assertEquals(AdmmConsensus.squaredDistanceSum(xSquaredNorm,
+				xAverage, SPLITS), expected, EPSILON);
+	}
+
+	@Test
+	public void relaxedRNorm() {
+		double alpha = 1.6;
+		double[] zPrevious = new double[COLS];
+		double[] z = new double[COLS];
+		for (int i = 0; i < COLS; i++) {
+			zPrevious[i] = random.nextGaussian();
+			z[i] = random.nextGaussian();
+		}
+		double[] xRelaxedAverage = new double[COLS];
+		double xSquaredNorm = 0.0;
+		double expected = 0.0;
+		for (int split = 0; split < SPLITS; split++) {
+			double[] x = new double[COLS];
+			for (int i = 0; i < COLS; i++) {
+				x[i] = random.nextGaussian();
+				xSquaredNorm += x[i] * x[i];
+				expected += Math.pow(x[i] - z[i], 2);
+			}
+			double[] xRelaxed = AdmmConsensus.relax(x, zPrevious, alpha);
+			for (int i = 0; i < COLS; i++) {
+				xRelaxedAverage[i] += xRelaxed[i] / SPLITS;
+			}
+		}
+
+		double[] xAverage = AdmmConsensus.unrelax(xRelaxedAverage, zPrevious,
+				alpha);
+		assertEquals(AdmmConsensus.rNorm(xSquaredNorm, xAverage, z, SPLITS),
+				Math.sqrt(expected), EPSILON);
+	}
+
+	@Test
+	public void rNorm() {
+		double[][] x = new double[SPLITS][COLS];
+		double[] xAverage = new double[COLS];
+		double[] z = new double[COLS];
+		double xSquaredNorm = 0.0;
+		for (int i = 0; i < COLS; i++) {
+			z[i] = random.nextGaussian();
+		}
+		for (int split = 0; split < SPLITS; split++) {
+			for (int i = 0; i < COLS; i++) {
+				x[split][i] = random.nextGaussian();
+				xAverage[i] += x[split][i] / SPLITS;
+				xSquaredNorm += x[split][i] * x[split][i];
+			}
+		}
+
+		double expected = 0.0;
+		for (int split = 0; split < SPLITS; split++) {
+			for (int i = 0; i < COLS; i++) {
+				expected += Math.pow(x[split][i] - z[i], 2);
+			}
+		}
+		assertEquals(AdmmConsensus.rNorm(xSquaredNorm, xAverage, z, SPLITS),
+				Math.sqrt(expected), EPSILON);
+	}
+
+	@Test
+	public void slices() {
+		int n = 10;
+		int numSlices = 3;
+		assertEquals(AdmmConsensus.sliceStart(0, numSlices, n), 0);
+		assertEquals(AdmmConsensus.sliceStart(numSlices, numSlices, n), n);
+		for (int slice = 0; slice < numSlices; slice++) {
+			int length = AdmmConsensus.sliceStart(slice + 1, numSlices, n)
+					- AdmmConsensus.sliceStart(slice, numSlices, n);
+			assertTrue(length == n / numSlices || length == n / numSlices + 1);
+		}
+	}
+
+	@Test
+	public void elasticNetUpdateZ() {
+		double rho = 0.5;
+		double lambda = 0.3;
+		double l1 = 2.0;
+		double[] xAverage = new double[COLS];
+		double[] uAverage = new double[COLS];
+		for (int i = 0; i < COLS; i++) {
+			xAverage[i] = random.nextGaussian();
+			uAverage[i] = 0.1 * random.nextGaussian();
+		}
+		double[] z = AdmmConsensus.updateZ(xAverage, uAverage, rho, lambda,
+				l1, SPLITS, true);
+
+		// every coordinate minimizes l1 * |z| + lambda * z^2 + rho * count
+		// / 2 * (z - v)^2, and is 0 within the threshold
+		double threshold = l1 / (rho * SPLITS);
+		for (int i = 0; i < COLS; i++) {
+			double v = xAverage[i] + uAverage[i];
+			if (Math.abs(v) <= threshold) {
+				assertEquals(z[i], 0.0);
+			}
+			double optimum = elasticNet(z[i], v, rho, lambda, l1);
+			assertTrue(optimum <= elasticNet(z[i] + 1e-4, v, rho, lambda, l1));
+			assertTrue(optimum <= elasticNet(z[i] - 1e-4, v, rho, lambda, l1));
+		}
+	}
+
+	private static double elasticNet(double z, double v, double rho,
+			double lambda, double l1) {
+		return l1 * Math.abs(z) + lambda * z * z + rho * SPLITS / 2
+				* (z - v) * (z - v);
+	}
+}
@@ -0,0 +1,93 @@
+package io.izenecloud.admm;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class TestAdmmIterationOutputFormat {
+	private static final double EPSILON = 1e-12;
+	private static final String SPLIT_ID = "split-0";
+
+	private Configuration conf;
+	private FileSystem fs;
+	private Path output;
+
+	private static void assertArrayEquals(double[] actual, double[] expected) {
+		assertEquals(actual.length, expected.length);
+		for (int i = 0; i < actual.length; i++) {
+			assertEquals(actual[i], expected[i], EPSILON);
+		}
+	}
+
+	@BeforeMethod
+	public void setUp() throws IOException {
+		conf = new Configuration();
+		fs = FileSystem.getLocal(conf);
+		output = new Path(System.getProperty("java.io.tmpdir"),
+				"TestAdmmIterationOutputFormat-" + System.nanoTime());
+		// the job output is keyed by the slice, as the driver sets it
+		conf.setClass("mapreduce.job.output.key.class", IntWritable.class,
+				Object.class);
+		conf.setClass("mapreduce.job.output.value.class",
+				AdmmReducerContextWritable.class, Object.class);
+		conf.set(FileOutputFormat.OUTDIR, output.toString());
+	}
+
+	@AfterMethod
+	public void tearDown() throws IOException {
+		fs.delete(output, true);
+	}
+
+	private void write(TaskAttemptContext context, String name, double[] v)
+			throws IOException, InterruptedException {
+		context.getConfiguration().set("com.b5m.admm.iteration.output.name",
+				name);
+		AdmmIterationOutputFormat<NullWritable, DoubleArrayWritable> format =
+				new AdmmIterationOutputFormat<NullWritable, DoubleArrayWritable>();
+		RecordWriter<NullWritable, DoubleArrayWritable> writer = format
+				.getRecordWriter(context, NullWritable.class,
+						DoubleArrayWritable.class);
+		writer.write(NullWritable.get(), new DoubleArrayWritable(v));
+		writer.close(context);
+	}
+
+	@Test
+	public void mapperStateIsReadBack() throws IOException,
+			InterruptedException {
+		double[] x = new double[] { 1.0, -2.0, 0.5 };
+		double[] u = new double[] { 0.1, 0.0, -0.3 };
+		double[] z = new double[] { 0.5, -1.0, 0.0 };
+		TaskAttemptContext context = new TaskAttemptContextImpl(conf,
+				new TaskAttemptID("admm", 0, TaskType.MAP, 0, 0));
+		write(context, "X-" + SPLIT_ID, x);
+		write(context, "U-" + SPLIT_ID, u);
+		AdmmIterationHelper.writeAdmmReducerContext(new AdmmReducerContext(
+				null, null, null, z, 0.0, 1.0, 0.0, 1L), new Path(output, "Z"),
+				fs, conf);
+
+		AdmmMapperContext read = AdmmIterationHelper
+				.readPreviousAdmmMapperContext(SPLIT_ID, output, fs, conf);
+		assertArrayEquals(read.getXInitial(), x);
+		assertArrayEquals(read.getZInitial(), z);
+		double[] expected = new double[u.length];
+		for (int i = 0; i < u.length; i++) {
+			expected[i] = u[i] + x[i] - z[i];
+		}
+		assertArrayEquals(read.getUInitial(), expected);
+	}
+}
@@ -0,0 +1,118 @@
+package io.izenecloud.admm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mahout.math.SequentialAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class TestAdmmLocalEngine {
+	private static final int SPLITS = 4;
+	private static final int ROWS = 100;
+	private static final int COLS = 10;
+	private static final int ITERATIONS_MAXIMUM = 300;
+	private static final double RHO = 1.0;
+	private static final double LAMBDA = 0.1;
+
+	private List<CompressedRowMatrix> randomSplits() {
+		Random random = new Random(3);
+		double[] w = new double[COLS];
+		for (int i = 0; i < COLS; i++) {
+			w[i] = random.nextGaussian();
+		}
+		List<CompressedRowMatrix> splits = new ArrayList<CompressedRowMatrix>();
+		for (int split = 0; split < SPLITS; split++) {
+			CompressedRowMatrix.Builder builder = new CompressedRowMatrix.Builder(
+					true);
+			for (int row = 0; row < ROWS; row++) {
+				Vector v = new SequentialAccessSparseVector(COLS + 1);
+				double margin = w[0];
+				for (int k = 0; k < 3; k++) {
+					int col = 1 + random.nextInt(COLS - 1);
+					double value = random.nextGaussian();
+					v.set(col - 1, value);
+					margin += w[col] * value;
+				}
+				v.set(COLS, random.nextDouble() < 1 / (1 + Math.exp(-margin)) ? 1.0
+						: -1.0);
+				builder.append(v);
+			}
+			splits.add(builder.build());
+		}
+		return splits;
+	}
+
+	private double[] solve(AdmmLocalEngine engine) {
+		try {
+			for (int iteration = 0; iteration < ITERATIONS_MAXIMUM; iteration++) {
+				if (engine.iterate(iteration).converged()) {
+					return engine.getZ();
+				}
+			}
+		} finally {
+			engine.shutdown();
+		}
+		fail("no convergence in " + ITERATIONS_MAXIMUM + " iterations");
+		return null;
+	}
+
+	/**
+	 * With one worker in four held back, bounded staleness still reaches the
+	 * consensus of synchronous ADMM.
+	 */
+	@Test
+	public void staleness() {
+		double[] expected = solve(new AdmmLocalEngine(randomSplits(), RHO,
+				LAMBDA, true));
+
+		DelayingExecutor executor = new DelayingExecutor(SPLITS);
+		AdmmLocalEngine engine = new AdmmLocalEngine(randomSplits(), RHO,
+				LAMBDA, true, executor);
+		engine.setStaleness(0.75, 2);
+		double[] z = solve(engine);
+
+		assertTrue(executor.delayed.get() > 0);
+		double distance = 0.0;
+		double norm = 0.0;
+		for (int i = 0; i < COLS; i++) {
+			distance += Math.pow(z[i] - expected[i], 2);
+			norm += expected[i] * expected[i];
+		}
+		assertTrue(Math.sqrt(distance) < 0.05 * Math.sqrt(norm), "distance "
+				+ Math.sqrt(distance) + " to " + Math.sqrt(norm));
+	}
+
+	/**
+	 * Stands in for a cluster with a straggler: every fourth task starts
+	 * late.
+	 */
+	private static class DelayingExecutor extends ThreadPoolExecutor {
+		private static final long DELAY_MILLIS = 20;
+		private final AtomicInteger started = new AtomicInteger();
+		private final AtomicInteger delayed = new AtomicInteger();
+
+		DelayingExecutor(int threads) {
+			super(threads, threads, 0L, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<Runnable>());
+		}
+
+		protected void beforeExecute(Thread t, Runnable r) {
+			if (0 == started.incrementAndGet() % 4) {
+				delayed.incrementAndGet();
+				try {
+					Thread.sleep(DELAY_MILLIS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package io.izenecloud.admm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class TestAdmmReducerContextWritable {
+	private static final double EPSILON = 1e-12;
+
+	private static void assertArrayEquals(double[] actual, double[] expected) {
+		assertEquals(actual.length, expected.length);
+		for (int i = 0; i < actual.length; i++) {
+			assertEquals(actual[i], expected[i], EPSILON);
+		}
+	}
+
+	private AdmmReducerContext read(byte[] bytes) throws IOException {
+		AdmmReducerContextWritable writable = new AdmmReducerContextWritable();
+		writable.readFields(new DataInputStream(new ByteArrayInputStream(
+				bytes)));
+		return writable.get();
+	}
+
+	@Test
+	public void readsTheLayoutWithoutNormAndCounts() throws IOException {
+		double[] z = new double[] { 0.5, -1.0, 0.0, 2.0 };
+		// x and u absent, z, rho, lambda, objective and count, as a
+		// FINAL_MODEL written before the norm and the counts were added
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeBoolean(false);
+		out.writeBoolean(false);
+		out.writeBoolean(true);
+		out.writeInt(z.length);
+		for (double v : z) {
+			out.writeDouble(v);
+		}
+		out.writeDouble(1.5);
+		out.writeDouble(0.1);
+		out.writeDouble(42.0);
+		out.writeLong(7L);
+		out.flush();
+
+		AdmmReducerContext context = read(bytes.toByteArray());
+		assertNull(context.getXUpdated());
+		assertNull(context.getUInitial());
+		assertArrayEquals(context.getZUpdated(), z);
+		assertEquals(context.getRho(), 1.5, EPSILON);
+		assertEquals(context.getLambdaValue(), 0.1, EPSILON);
+		assertEquals(context.getPrimalObjectiveValue(), 42.0, EPSILON);
+		assertEquals(context.getCount(), 7L);
+		assertEquals(context.getXSquaredNorm(), 0.0, EPSILON);
+		assertNull(context.getCounts());
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+		double[] x = new double[] { 1.0, 2.0, 3.0 };
+		double[] counts = new double[] { 4.0, 0.0, 1.0 };
+		AdmmReducerContext context = new AdmmReducerContext(null, null, x,
+				null, 3.0, 1.0, 0.5, 9L, 14.0, counts);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new AdmmReducerContextWritable(context).write(new DataOutputStream(
+				bytes));
+
+		AdmmReducerContext read = read(bytes.toByteArray());
+		assertArrayEquals(read.getXUpdated(), x);
+		assertNull(read.getZUpdated());
+		assertEquals(read.getCount(), 9L);
+		assertEquals(read.getXSquaredNorm(), 14.0, EPSILON);
+		assertArrayEquals(read.getCounts(), counts);
+	}
+}
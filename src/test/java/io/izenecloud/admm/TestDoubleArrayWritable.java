@@ -0,0 +1,97 @@
+package io.izenecloud.admm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class TestDoubleArrayWritable {
+	private static final int LENGTH = 20000;
+	private final Random random = new Random(3);
+
+	private double[] randomArray(double density) {
+		double[] arr = new double[LENGTH];
+		for (int i = 0; i < arr.length; i++) {
+			if (random.nextDouble() < density) {
+				arr[i] = random.nextGaussian();
+			}
+		}
+		return arr;
+	}
+
+	private byte[] write(double[] arr, boolean singlePrecision)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new DoubleArrayWritable(arr, singlePrecision)
+				.write(new DataOutputStream(bytes));
+		return bytes.toByteArray();
+	}
+
+	private double[] read(byte[] bytes) throws IOException {
+		DoubleArrayWritable writable = new DoubleArrayWritable();
+		writable.readFields(new DataInputStream(new ByteArrayInputStream(
+				bytes)));
+		return writable.get();
+	}
+
+	private static void assertArrayEquals(double[] actual, double[] expected) {
+		assertEquals(actual.length, expected.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(actual[i], expected[i]);
+		}
+	}
+
+	@Test
+	public void denseLayout() throws IOException {
+		double[] arr = randomArray(1.0);
+		byte[] bytes = write(arr, false);
+		assertEquals(bytes.length, 4 + 8 * LENGTH);
+
+		// length plus one writeDouble per element, as ArrayWritable wrote it
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				bytes));
+		assertEquals(in.readInt(), LENGTH);
+		for (int i = 0; i < LENGTH; i++) {
+			assertEquals(in.readDouble(), arr[i]);
+		}
+		assertArrayEquals(read(bytes), arr);
+	}
+
+	@Test
+	public void sparse() throws IOException {
+		double[] arr = randomArray(0.05);
+		byte[] bytes = write(arr, false);
+		assertTrue(bytes.length < 8 * LENGTH / 4);
+		assertArrayEquals(read(bytes), arr);
+	}
+
+	@Test
+	public void singlePrecision() throws IOException {
+		for (double density : new double[] { 1.0, 0.05 }) {
+			double[] arr = randomArray(density);
+			double[] copy = read(write(arr, true));
+			assertEquals(copy.length, arr.length);
+			for (int i = 0; i < arr.length; i++) {
+				assertEquals(copy[i], (double) (float) arr[i]);
+			}
+		}
+	}
+
+	@Test
+	public void reuse() throws IOException {
+		DoubleArrayWritable writable = new DoubleArrayWritable();
+		double[] first = randomArray(1.0);
+		double[] second = randomArray(0.05);
+		writable.readFields(new DataInputStream(new ByteArrayInputStream(
+				write(first, false))));
+		writable.readFields(new DataInputStream(new ByteArrayInputStream(
+				write(second, false))));
+		assertArrayEquals(writable.get(), second);
+	}
+}
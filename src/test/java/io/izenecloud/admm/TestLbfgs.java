@@ -0,0 +1,88 @@
+package io.izenecloud.admm;
+
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class TestLbfgs {
+	private static final int N = 6;
+	private static final double EPSILON = 1e-4;
+
+	/**
+	 * sum 100 (x_i+1 - x_i^2)^2 + (1 - x_i)^2, minimal at all ones.
+	 */
+	private static final DifferentiableFunction ROSENBROCK = new CachingDiffFunction() {
+		public int domainDimension() {
+			return N;
+		}
+
+		protected double calculate(double[] x, double[] gradient) {
+			double value = 0.0;
+			for (int i = 0; i + 1 < x.length; i++) {
+				double a = x[i + 1] - x[i] * x[i];
+				double b = 1 - x[i];
+				value += 100 * a * a + b * b;
+				gradient[i] += -400 * a * x[i] - 2 * b;
+				gradient[i + 1] += 200 * a;
+			}
+			return value;
+		}
+	};
+
+	private void assertRosenbrock(Lbfgs lbfgs) {
+		double[] x = lbfgs.minimize(ROSENBROCK, 1e-12, new double[N]);
+		for (int i = 0; i < N; i++) {
+			assertEquals(x[i], 1.0, EPSILON);
+		}
+	}
+
+	@Test
+	public void backtracking() {
+		assertRosenbrock(new Lbfgs());
+	}
+
+	@Test
+	public void wolfe() {
+		Lbfgs lbfgs = new Lbfgs(5);
+		lbfgs.setLineSearch(Lbfgs.LineSearch.WOLFE);
+		assertRosenbrock(lbfgs);
+		// a second run reuses the workspace
+		assertRosenbrock(lbfgs);
+	}
+
+	/**
+	 * 1/2 ||x - c||^2 + l1 ||x||_1 is minimized by soft thresholding c.
+	 */
+	@Test
+	public void l1() {
+		Random random = new Random(13);
+		final double[] c = new double[N];
+		for (int i = 0; i < N; i++) {
+			c[i] = random.nextGaussian();
+		}
+		double l1 = 0.5;
+		Lbfgs lbfgs = new Lbfgs();
+		lbfgs.setL1(l1);
+		double[] x = lbfgs.minimize(new CachingDiffFunction() {
+			public int domainDimension() {
+				return N;
+			}
+
+			protected double calculate(double[] x, double[] gradient) {
+				double value = 0.0;
+				for (int i = 0; i < x.length; i++) {
+					value += (x[i] - c[i]) * (x[i] - c[i]) / 2;
+					gradient[i] = x[i] - c[i];
+				}
+				return value;
+			}
+		}, 1e-12, new double[N]);
+		for (int i = 0; i < N; i++) {
+			double expected = Math.signum(c[i])
+					* Math.max(0.0, Math.abs(c[i]) - l1);
+			assertEquals(x[i], expected, EPSILON);
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package io.izenecloud.admm;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.mahout.math.SequentialAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class TestLogisticL2DiffFunction {
+	private static final int ROWS = 200;
+	private static final int COLS = 50;
+	private static final double EPSILON = 1e-6;
+	private final Random random = new Random(7);
+
+	private CompressedRowMatrix randomMatrix(boolean addIntercept) {
+		return randomMatrix(addIntercept, ROWS);
+	}
+
+	private CompressedRowMatrix randomMatrix(boolean addIntercept, int rows) {
+		CompressedRowMatrix.Builder builder = new CompressedRowMatrix.Builder(
+				addIntercept);
+		for (int row = 0; row < rows; row++) {
+			Vector v = new SequentialAccessSparseVector(COLS + 1);
+			for (int k = 0; k < 5; k++) {
+				v.set(random.nextInt(COLS), random.nextGaussian());
+			}
+			v.set(COLS, random.nextBoolean() ? 1.0 : -1.0);
+			builder.append(v);
+		}
+		return builder.build();
+	}
+
+	@Test
+	public void build() {
+		CompressedRowMatrix a = randomMatrix(true);
+		assertEquals(a.numRows(), ROWS);
+		assertEquals(a.numCols(), COLS);
+		for (int row = 0; row < a.numRows(); row++) {
+			int start = a.getRowPtr()[row];
+			assertEquals(a.getColIdx()[start], 0);
+			assertEquals(a.getValues()[start], 1.0);
+			for (int k = start; k < a.getRowPtr()[row + 1]; k++) {
+				assertTrue(a.getColIdx()[k] < COLS);
+			}
+			assertEquals(Math.abs(a.getLabels()[row]), 1.0);
+		}
+	}
+
+	@Test
+	public void gradient() {
+		CompressedRowMatrix a = randomMatrix(false);
+		double[] u = new double[COLS];
+		double[] z = new double[COLS];
+		double[] x = new double[COLS];
+		for (int i = 0; i < COLS; i++) {
+			u[i] = random.nextGaussian() * 0.1;
+			z[i] = random.nextGaussian() * 0.1;
+			x[i] = random.nextGaussian() * 0.1;
+		}
+		LogisticL2DiffFunction function = new LogisticL2DiffFunction(a, 0.5,
+				u, z);
+		double[] gradient = function.derivativeAt(x).clone();
+		for (int i = 0; i < COLS; i++) {
+			double[] xp = x.clone();
+			double[] xm = x.clone();
+			xp[i] += EPSILON;
+			xm[i] -= EPSILON;
+			double numeric = (function.valueAt(xp) - function.valueAt(xm))
+					/ (2 * EPSILON);
+			assertEquals(gradient[i], numeric, 1e-6);
+		}
+	}
+
+	@Test
+	public void fusedValue() {
+		CompressedRowMatrix a = randomMatrix(true);
+		double[] u = new double[COLS];
+		double[] z = new double[COLS];
+		double[] x = new double[COLS];
+		for (int i = 0; i < COLS; i++) {
+			z[i] = random.nextGaussian() * 0.1;
+			x[i] = random.nextGaussian();
+		}
+		LogisticL2DiffFunction function = new LogisticL2DiffFunction(a, 2.0,
+				u, z);
+		double expected = function.evaluatePrimalObjective(x)
+				+ function.evaluateObjectiveDualPenalty(x);
+		assertEquals(function.valueAt(x), expected, 1e-12);
+		double[] gradient = function.derivativeAt(x);
+		assertTrue(gradient == function.derivativeAt(x.clone()));
+		assertEquals(function.valueAt(x), expected, 1e-12);
+	}
+
+	@Test
+	public void compact() {
+		CompressedRowMatrix.Builder builder = new CompressedRowMatrix.Builder(
+				true);
+		for (int row = 0; row < ROWS; row++) {
+			Vector v = new SequentialAccessSparseVector(COLS + 1);
+			// odd columns only
+			v.set(2 * random.nextInt(COLS / 2) + 1, random.nextGaussian());
+			v.set(COLS, random.nextBoolean() ? 1.0 : -1.0);
+			builder.append(v);
+		}
+		CompressedRowMatrix a = builder.build();
+		int[] columns = a.activeColumns();
+		assertEquals(columns[0], 0);
+		for (int j = 1; j < columns.length; j++) {
+			assertEquals(columns[j] % 2, 1);
+		}
+
+		CompressedRowMatrix compact = a.compact(columns);
+		assertEquals(compact.numCols(), columns.length);
+		double[] x = new double[COLS];
+		double[] xCompact = new double[columns.length];
+		for (int j = 0; j < columns.length; j++) {
+			xCompact[j] = random.nextGaussian();
+			x[columns[j]] = xCompact[j];
+		}
+		LogisticL2DiffFunction full = new LogisticL2DiffFunction(a, 1.0,
+				new double[COLS], new double[COLS]);
+		LogisticL2DiffFunction local = new LogisticL2DiffFunction(compact,
+				1.0, new double[columns.length], new double[columns.length]);
+		assertEquals(local.valueAt(xCompact), full.valueAt(x), 1e-12);
+	}
+
+	@Test
+	public void sharded() {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			// more shards than rows in the last case
+			int[][] cases = { { ROWS, 3 }, { ROWS, 4 }, { 3, 8 } };
+			for (int[] c : cases) {
+				CompressedRowMatrix a = randomMatrix(true, c[0]);
+				double[] u = new double[COLS];
+				double[] z = new double[COLS];
+				double[] x = new double[COLS];
+				for (int i = 0; i < COLS; i++) {
+					u[i] = random.nextGaussian() * 0.1;
+					z[i] = random.nextGaussian() * 0.1;
+					x[i] = random.nextGaussian();
+				}
+				LogisticL2DiffFunction serial = new LogisticL2DiffFunction(a,
+						0.5, u, z);
+				LogisticL2DiffFunction sharded = new LogisticL2DiffFunction(
+						a, 0.5, u, z, executor, c[1]);
+				assertEquals(sharded.valueAt(x), serial.valueAt(x), 1e-9);
+				double[] expected = serial.derivativeAt(x).clone();
+				double[] gradient = sharded.derivativeAt(x);
+				assertEquals(gradient.length, expected.length);
+				for (int i = 0; i < expected.length; i++) {
+					assertEquals(gradient[i], expected[i], 1e-9);
+				}
+				// the shard buffers are reset between points
+				double[] y = x.clone();
+				y[0] += 1.0;
+				assertEquals(sharded.valueAt(y), serial.valueAt(y), 1e-9);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package io.izenecloud.admm;
+
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class TestSpectralRhoUpdater {
+	private static final int COLS = 20;
+	private static final double LOSS_CURVATURE = 4.0;
+	private static final double REGULARIZER_CURVATURE = 0.25;
+	private static final double EPSILON = 1e-9;
+	private final Random random = new Random(5);
+
+	/**
+	 * With a quadratic loss and regularizer the spectral estimates are their
+	 * exact curvatures, and rho their geometric mean.
+	 */
+	@Test
+	public void quadratic() {
+		SpectralRhoUpdater updater = new SpectralRhoUpdater();
+		double rho = 1.0;
+		for (int iteration = 0; iteration <= 2; iteration++) {
+			double[] x = new double[COLS];
+			double[] z = new double[COLS];
+			double[] zPrevious = new double[COLS];
+			double[] u = new double[COLS];
+			for (int i = 0; i < COLS; i++) {
+				x[i] = random.nextGaussian();
+				z[i] = random.nextGaussian();
+				// chosen so that the loss gradient -yHat is a * x and the
+				// regularizer gradient y is b * z
+				zPrevious[i] = z[i]
+						+ (REGULARIZER_CURVATURE * z[i] + LOSS_CURVATURE * x[i])
+						/ rho;
+				u[i] = REGULARIZER_CURVATURE * z[i] / rho - x[i] + z[i];
+			}
+			AdmmIterationStatus status = new AdmmIterationStatus(iteration,
+					0.0, 1.0, 1.0, 1.0, 1.0, rho);
+			rho = updater.update(status, new AdmmReducerContext(null, u, x,
+					z, 0.0, rho, 0.0, 1L), zPrevious);
+			if (iteration < 2) {
+				assertEquals(rho, 1.0, EPSILON);
+			}
+		}
+		assertEquals(rho, Math.sqrt(LOSS_CURVATURE * REGULARIZER_CURVATURE),
+				EPSILON);
+	}
+}
@@ -0,0 +1,79 @@
+package io.izenecloud.admm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class TestSplitCache {
+	// enough non-zeroes for the values to span several buffer blocks
+	private static final int ROWS = 50000;
+	private static final int COLS = 1000;
+	private static final int ROW_LENGTH = 3;
+	private final Random random = new Random(5);
+
+	private CompressedRowMatrix randomMatrix() {
+		int[] rowPtr = new int[ROWS + 1];
+		int[] colIdx = new int[ROWS * ROW_LENGTH];
+		double[] values = new double[colIdx.length];
+		double[] labels = new double[ROWS];
+		for (int row = 0; row < ROWS; row++) {
+			rowPtr[row + 1] = rowPtr[row] + ROW_LENGTH;
+			for (int k = rowPtr[row]; k < rowPtr[row + 1]; k++) {
+				colIdx[k] = random.nextInt(COLS);
+				values[k] = random.nextGaussian();
+			}
+			labels[row] = random.nextBoolean() ? 1.0 : -1.0;
+		}
+		return new CompressedRowMatrix(ROWS, COLS, rowPtr, colIdx, values,
+				labels);
+	}
+
+	private static byte[] write(CompressedRowMatrix a) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		SplitCache.write(a, out);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static CompressedRowMatrix read(byte[] bytes) throws IOException {
+		return SplitCache.read(new DataInputStream(new ByteArrayInputStream(
+				bytes)));
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+		CompressedRowMatrix a = randomMatrix();
+		CompressedRowMatrix cached = read(write(a));
+
+		assertNotNull(cached);
+		assertEquals(cached.numRows(), a.numRows());
+		assertEquals(cached.numCols(), a.numCols());
+		assertEquals(cached.numNonZeroes(), a.numNonZeroes());
+		for (int row = 0; row <= ROWS; row++) {
+			assertEquals(cached.getRowPtr()[row], a.getRowPtr()[row]);
+		}
+		for (int k = 0; k < a.numNonZeroes(); k++) {
+			assertEquals(cached.getColIdx()[k], a.getColIdx()[k]);
+			assertEquals(cached.getValues()[k], a.getValues()[k]);
+		}
+		for (int row = 0; row < ROWS; row++) {
+			assertEquals(cached.getLabels()[row], a.getLabels()[row]);
+		}
+	}
+
+	@Test
+	public void unknownFormat() throws IOException {
+		byte[] bytes = write(randomMatrix());
+		// a cache of another format version is ignored, not misread
+		bytes[7]++;
+		assertNull(read(bytes));
+	}
+}
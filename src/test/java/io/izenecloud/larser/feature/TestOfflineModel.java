@@ -0,0 +1,105 @@
+package io.izenecloud.larser.feature;
+
+import java.util.Random;
+
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.Vector.Element;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class TestOfflineModel {
+	private static final int USER = 6;
+	private static final int ITEM = 9;
+	private static final double EPSILON = 1e-9;
+	private final Random random = new Random(11);
+
+	private Vector sparse(int size, int nonZeroes) {
+		Vector v = new RandomAccessSparseVector(size);
+		for (int k = 0; k < nonZeroes; k++) {
+			v.set(random.nextInt(size), random.nextGaussian());
+		}
+		return v;
+	}
+
+	private double[] weights(int size) {
+		double[] z = new double[size];
+		for (int i = 0; i < size; i++) {
+			z[i] = random.nextGaussian();
+		}
+		return z;
+	}
+
+	private static Vector slice(double[] z, int from, int size) {
+		Vector v = new DenseVector(size);
+		for (int i = 0; i < size; i++) {
+			v.set(i, z[from + i]);
+		}
+		return v;
+	}
+
+	/**
+	 * The margin of the training, z . x of the offline feature vector.
+	 */
+	private static double margin(QuadraticFeatures features, double[] z,
+			Vector user, Vector item) {
+		Vector x = features.cross(user, item, 1.0);
+		double margin = 0.0;
+		for (Element e : x.nonZeroes()) {
+			if (e.index() < z.length) {
+				margin += z[e.index()] * e.get();
+			}
+		}
+		return margin;
+	}
+
+	@Test
+	public void fullCrossesScoreAsTrained() {
+		QuadraticFeatures features = new QuadraticFeatures(USER, ITEM, 0);
+		double[] z = weights(features.getNumFeatures());
+		Matrix A = new DenseMatrix(USER, ITEM);
+		for (int row = 0; row < USER; row++) {
+			for (int col = 0; col < ITEM; col++) {
+				A.setQuick(row, col, z[features.crossIndex(row, col)]);
+			}
+		}
+		OfflineModel model = OfflineModel.of(slice(z, 0, USER), slice(z,
+				USER, ITEM), A);
+		for (int n = 0; n < 20; n++) {
+			Vector user = sparse(USER, 3);
+			Vector item = sparse(ITEM, 4);
+			assertEquals(model.score(user, item),
+					margin(features, z, user, item), EPSILON);
+		}
+	}
+
+	@Test
+	public void hashedCrossesScoreAsTrained() {
+		int buckets = 7;
+		QuadraticFeatures features = new QuadraticFeatures(USER, ITEM, buckets);
+		double[] z = weights(features.getNumFeatures());
+		QuadraticWeights A = QuadraticWeights.hashed(USER, ITEM, slice(z,
+				USER + ITEM, buckets));
+		assertTrue(A.isHashed());
+		for (int row = 0; row < USER; row++) {
+			for (int col = 0; col < ITEM; col++) {
+				assertEquals(A.get(row, col), features.crossSign(row, col)
+						* z[features.crossIndex(row, col)], EPSILON);
+			}
+		}
+
+		OfflineModel model = OfflineModel.of(slice(z, 0, USER), slice(z,
+				USER, ITEM), A);
+		assertEquals(model.numNonZeroes(), buckets);
+		for (int n = 0; n < 20; n++) {
+			Vector user = sparse(USER, 3);
+			Vector item = sparse(ITEM, 4);
+			assertEquals(model.score(user, item),
+					margin(features, z, user, item), EPSILON);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package io.izenecloud.larser.feature;
+
+import io.izenecloud.lr.ListWritable;
+import io.izenecloud.lr.OnlineGroupInputFormat;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.mahout.math.DenseVector;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class TestOnlineGroupWriter {
+	private static final double EPSILON = 1e-12;
+	// appended interleaved, read back sorted
+	private static final String[] KEYS = new String[] { "item-c", "item-a",
+			"item-b", "item-a", "item-c", "item-a" };
+
+	private Configuration conf;
+	private FileSystem fs;
+	private Path dir;
+
+	@BeforeMethod
+	public void setUp() throws IOException {
+		conf = new Configuration();
+		fs = FileSystem.getLocal(conf);
+		dir = new Path(System.getProperty("java.io.tmpdir"),
+				"TestOnlineGroupWriter-" + System.nanoTime());
+	}
+
+	@AfterMethod
+	public void tearDown() throws IOException {
+		fs.delete(dir, true);
+	}
+
+	private static OnlineVectorWritable sample(int i) {
+		return new OnlineVectorWritable((double) i, i % 2, new DenseVector(
+				new double[] { i, -i }));
+	}
+
+	private Path write(OnlineGroupWriter writer, Path path) throws IOException {
+		for (int i = 0; i < KEYS.length; i++) {
+			writer.append(new Text(KEYS[i]), sample(i));
+		}
+		writer.close();
+		return path;
+	}
+
+	private void assertGroup(RecordReader<Text, ListWritable> reader,
+			String key, int... samples) throws IOException,
+			InterruptedException {
+		assertTrue(reader.nextKeyValue());
+		assertEquals(reader.getCurrentKey().toString(), key);
+		List<Writable> values = reader.getCurrentValue().get();
+		assertEquals(values.size(), samples.length);
+		for (int k = 0; k < samples.length; k++) {
+			OnlineVectorWritable value = (OnlineVectorWritable) values.get(k);
+			int i = samples[k];
+			assertEquals(value.getOffset(), (double) i, EPSILON);
+			assertEquals(value.getOction(), Integer.valueOf(i % 2));
+			assertEquals(value.getSample().get(0), (double) i, EPSILON);
+			assertEquals(value.getSample().get(1), (double) -i, EPSILON);
+		}
+	}
+
+	private void assertReadBack(Path path) throws IOException,
+			InterruptedException {
+		TaskAttemptContext context = new TaskAttemptContextImpl(conf,
+				new TaskAttemptID("online", 0, TaskType.MAP, 0, 0));
+		FileSplit split = new FileSplit(path, 0, fs.getFileStatus(path)
+				.getLen(), null);
+		RecordReader<Text, ListWritable> reader = new OnlineGroupInputFormat()
+				.createRecordReader(split, context);
+		try {
+			reader.initialize(split, context);
+			assertGroup(reader, "item-a", 1, 3, 5);
+			assertGroup(reader, "item-b", 2);
+			assertGroup(reader, "item-c", 0, 4);
+			assertFalse(reader.nextKeyValue());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void groupsAreReadBackSortedByKey() throws IOException,
+			InterruptedException {
+		Path path = new Path(dir, "part-00000");
+		OnlineGroupWriter writer = new OnlineGroupWriter(fs, path);
+		assertReadBack(write(writer, path));
+		assertEquals(writer.getNumSamples(), KEYS.length);
+		assertEquals(writer.getNumRuns(), 0);
+	}
+
+	@Test
+	public void spilledRunsAreMerged() throws IOException,
+			InterruptedException {
+		Path path = new Path(dir, "part-00000");
+		// every sample is spilled as a run of its own
+		OnlineGroupWriter writer = new OnlineGroupWriter(fs, path, 1);
+		write(writer, path);
+		assertEquals(writer.getNumSamples(), KEYS.length);
+		assertReadBack(path);
+		// the runs are gone, the partition is the only file left
+		assertEquals(fs.listStatus(dir).length, 1);
+	}
+}
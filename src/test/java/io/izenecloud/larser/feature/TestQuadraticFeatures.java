@@ -0,0 +1,75 @@
+package io.izenecloud.larser.feature;
+
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.Vector.Element;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class TestQuadraticFeatures {
+	private static final int USER = 5;
+	private static final int ITEM = 7;
+	private static final double EPSILON = 1e-12;
+
+	private Vector user() {
+		Vector user = new RandomAccessSparseVector(USER);
+		user.set(4, 2.0);
+		user.set(1, 3.0);
+		user.set(2, -1.0);
+		return user;
+	}
+
+	private Vector item() {
+		Vector item = new RandomAccessSparseVector(ITEM);
+		item.set(6, 0.5);
+		item.set(3, 4.0);
+		return item;
+	}
+
+	@Test
+	public void exactCrossesAreRowMajor() {
+		QuadraticFeatures features = new QuadraticFeatures(USER, ITEM, 0);
+		Vector user = user();
+		Vector item = item();
+		Vector x = features.cross(user, item, 1.0);
+
+		assertEquals(x.size(), USER + ITEM + USER * ITEM + 1);
+		assertEquals(x.getNumNondefaultElements(), 3 + 2 + 3 * 2 + 1);
+		for (Element u : user.nonZeroes()) {
+			assertEquals(x.get(u.index()), u.get(), EPSILON);
+			for (Element i : item.nonZeroes()) {
+				assertEquals(x.get(USER + ITEM + u.index() * ITEM + i.index()),
+						u.get() * i.get(), EPSILON);
+			}
+		}
+		for (Element i : item.nonZeroes()) {
+			assertEquals(x.get(USER + i.index()), i.get(), EPSILON);
+		}
+		assertEquals(x.get(x.size() - 1), 1.0, EPSILON);
+	}
+
+	@Test
+	public void hashedCrossesAddUpInTheirBuckets() {
+		int buckets = 3;
+		QuadraticFeatures features = new QuadraticFeatures(USER, ITEM, buckets);
+		Vector user = user();
+		Vector item = item();
+		Vector x = features.cross(user, item, 1.0);
+
+		assertEquals(x.size(), USER + ITEM + buckets + 1);
+		double[] expected = new double[x.size()];
+		for (Element u : user.nonZeroes()) {
+			for (Element i : item.nonZeroes()) {
+				int index = features.crossIndex(u.index(), i.index());
+				assertTrue(index >= USER + ITEM && index < USER + ITEM + buckets);
+				expected[index] += features.crossSign(u.index(), i.index())
+						* u.get() * i.get();
+			}
+		}
+		for (int index = USER + ITEM; index < USER + ITEM + buckets; index++) {
+			assertEquals(x.get(index), expected[index], EPSILON);
+		}
+		assertEquals(x.get(x.size() - 1), 1.0, EPSILON);
+	}
+}
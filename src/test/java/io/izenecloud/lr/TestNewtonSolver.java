@@ -0,0 +1,59 @@
+package io.izenecloud.lr;
+
+import io.izenecloud.admm.Lbfgs;
+
+import java.util.Random;
+
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class TestNewtonSolver {
+	private static final int ROWS = 12;
+	private static final int COLS = 6;
+	private static final double EPSILON = 1e-6;
+	private final Random random = new Random(17);
+
+	private LogisticL2DiffFunction randomFunction(double lambda) {
+		Vector[] a = new Vector[ROWS];
+		double[] b = new double[ROWS];
+		double[] offset = new double[ROWS];
+		for (int row = 0; row < ROWS; row++) {
+			// the last column is the label slot and stays empty
+			a[row] = new RandomAccessSparseVector(COLS + 1);
+			for (int col = 0; col < COLS; col++) {
+				if (random.nextDouble() < 0.6) {
+					a[row].set(col, random.nextGaussian());
+				}
+			}
+			b[row] = random.nextBoolean() ? 1.0 : -1.0;
+			offset[row] = 0.1 * random.nextGaussian();
+		}
+		return new LogisticL2DiffFunction(a, b, offset, new double[COLS],
+				lambda);
+	}
+
+	@Test
+	public void agreesWithLbfgs() {
+		NewtonSolver newton = new NewtonSolver();
+		for (double lambda : new double[] { 1e-6, 0.01, 1.0 }) {
+			LogisticL2DiffFunction f = randomFunction(lambda);
+			double[] expected = new Lbfgs().minimize(f, 1e-12,
+					new double[COLS]);
+			double[] x = newton.minimize(f, 1e-12, new double[COLS]);
+			assertNotNull(x);
+			for (int i = 0; i < COLS; i++) {
+				assertEquals(x[i], expected[i], EPSILON);
+			}
+		}
+	}
+
+	@Test
+	public void prefer() {
+		assertTrue(NewtonSolver.prefer(5, 40, 8, 32, Lbfgs.DEFAULT_MEMORY));
+		assertFalse(NewtonSolver.prefer(5, 40, 64, 32, Lbfgs.DEFAULT_MEMORY));
+		assertFalse(NewtonSolver.prefer(0, 0, 8, 32, Lbfgs.DEFAULT_MEMORY));
+	}
+}
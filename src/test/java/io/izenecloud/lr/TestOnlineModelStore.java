@@ -0,0 +1,131 @@
+package io.izenecloud.lr;
+
+import io.izenecloud.admm.DoubleArrayWritable;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.TaskID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class TestOnlineModelStore {
+	// the models are stored in single precision, these are exact
+	private static final double[] A = new double[] { 0.5, -1.0 };
+	private static final double[] B = new double[] { 2.0, 0.25 };
+	private static final double[] C = new double[] { -0.75, 4.0 };
+	private static final double[] B2 = new double[] { 8.0, -0.5 };
+	private static final double[] D = new double[] { 1.5, 0.0 };
+
+	private Configuration conf;
+	private FileSystem fs;
+	private Path root;
+
+	@BeforeMethod
+	public void setUp() throws IOException {
+		conf = new Configuration();
+		fs = FileSystem.getLocal(conf);
+		root = new Path(System.getProperty("java.io.tmpdir"),
+				"TestOnlineModelStore-" + System.nanoTime());
+	}
+
+	@AfterMethod
+	public void tearDown() throws IOException {
+		fs.delete(root, true);
+	}
+
+	/**
+	 * Publishes the models of one task, given as key, x, key, x ...
+	 */
+	private void publish(int task, Object... models) throws IOException {
+		SequenceFile.Writer writer = OnlineModelStore.createUpdateWriter(root,
+				new TaskID("online", 0, TaskType.MAP, task), conf);
+		try {
+			for (int i = 0; i < models.length; i += 2) {
+				writer.append(new Text((String) models[i]),
+						new DoubleArrayWritable((double[]) models[i + 1]));
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static void assertModel(OnlineModelStore store, String key,
+			double[] expected) throws IOException {
+		double[] x = store.get(key);
+		assertNotNull(x, key);
+		assertEquals(x.length, expected.length);
+		for (int i = 0; i < x.length; i++) {
+			assertEquals(x[i], expected[i], 0.0);
+		}
+	}
+
+	@Test
+	public void firstMergeWithoutModel() throws IOException {
+		assertNull(OnlineModelStore.open(root, conf));
+		publish(0, "a", A, "c", C);
+		publish(1, "b", B);
+		OnlineModelStore.merge(root, conf);
+
+		OnlineModelStore store = OnlineModelStore.open(root, conf);
+		assertNotNull(store);
+		try {
+			assertModel(store, "a", A);
+			assertModel(store, "b", B);
+			assertModel(store, "c", C);
+			assertNull(store.get("d"));
+		} finally {
+			store.close();
+		}
+		assertFalse(fs.exists(new Path(root, "UPDATES")));
+	}
+
+	@Test
+	public void updatesOverrideAndUntouchedModelsAreKept() throws IOException {
+		publish(0, "a", A, "b", B, "c", C);
+		OnlineModelStore.merge(root, conf);
+		publish(0, "b", B2);
+		publish(1, "d", D);
+		OnlineModelStore.merge(root, conf);
+
+		OnlineModelStore store = OnlineModelStore.open(root, conf);
+		try {
+			assertModel(store, "a", A);
+			assertModel(store, "b", B2);
+			assertModel(store, "c", C);
+			assertModel(store, "d", D);
+		} finally {
+			store.close();
+		}
+	}
+
+	@Test
+	public void unsortedUpdatesLeaveTheModel() throws IOException {
+		publish(0, "a", A);
+		OnlineModelStore.merge(root, conf);
+		publish(0, "c", C, "b", B);
+		try {
+			OnlineModelStore.merge(root, conf);
+			fail("unsorted updates merged");
+		} catch (IOException e) {
+			// expected
+		}
+
+		OnlineModelStore store = OnlineModelStore.open(root, conf);
+		try {
+			assertModel(store, "a", A);
+			assertNull(store.get("b"));
+		} finally {
+			store.close();
+		}
+		assertTrue(fs.exists(new Path(root, "UPDATES")));
+	}
+}